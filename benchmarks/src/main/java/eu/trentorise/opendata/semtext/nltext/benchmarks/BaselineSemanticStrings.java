@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext.benchmarks;
+
+import eu.trentorise.opendata.disiclient.UrlMapper;
+import eu.trentorise.opendata.semtext.Meaning;
+import eu.trentorise.opendata.semtext.MeaningKind;
+import eu.trentorise.opendata.semtext.MeaningStatus;
+import eu.trentorise.opendata.semtext.SemText;
+import eu.trentorise.opendata.semtext.Sentence;
+import eu.trentorise.opendata.semtext.Term;
+import eu.trentorise.opendata.semtext.nltext.NLTermMetadata;
+import eu.trentorise.opendata.semtext.nltext.NLTextConverter;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.ComplexConcept;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.ConceptTerm;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.InstanceTerm;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticString;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticTerm;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.StringTerm;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SemText to SemanticString conversion as done by
+ * {@link eu.trentorise.opendata.semtext.nltext.SemanticStringConverter} before
+ * lists were pre-sized, repeated string terms merged and meaning ids taken
+ * from metadata. Only kept as a baseline for
+ * {@link SemanticStringConverterBenchmark}, so allocation per term can be
+ * compared in the same run. Issues are not reported.
+ *
+ * @author David Leoni
+ */
+final class BaselineSemanticStrings {
+
+    private BaselineSemanticStrings() {
+    }
+
+    static SemanticString semanticString(SemText st, UrlMapper urlMapper) {
+        List<ComplexConcept> complexConcepts = new ArrayList<ComplexConcept>();
+
+        for (Sentence sentence : st.getSentences()) {
+            for (Term stTerm : sentence.getTerms()) {
+                List<SemanticTerm> semTerms = new ArrayList<SemanticTerm>();
+                List<ConceptTerm> concTerms = new ArrayList<ConceptTerm>();
+                List<InstanceTerm> entityTerms = new ArrayList<InstanceTerm>();
+                List<StringTerm> stringTerms = new ArrayList<StringTerm>();
+
+                SemanticTerm semTerm = new SemanticTerm();
+                if (MeaningStatus.SELECTED.equals(stTerm.getMeaningStatus())
+                        || MeaningStatus.REVIEWED.equals(stTerm.getMeaningStatus())) {
+                    addMeaning(stTerm.getSelectedMeaning(), 5.0, concTerms, entityTerms, urlMapper);
+                }
+
+                for (Meaning m : stTerm.getMeanings()) {
+                    Meaning selMeaning = stTerm.getSelectedMeaning();
+                    boolean sameAsSelMeaning = selMeaning != null && selMeaning.getId().equals(m.getId());
+                    if (!"".equals(m.getId()) && !sameAsSelMeaning) {
+                        addMeaning(m, m.getProbability(), concTerms, entityTerms, urlMapper);
+                    }
+                }
+
+                boolean foundNLTermMetadata = false;
+                if (stTerm.hasMetadata(NLTextConverter.NLTEXT_NAMESPACE)) {
+                    Object metadataObj = stTerm.getMetadata(NLTextConverter.NLTEXT_NAMESPACE);
+                    if (metadataObj instanceof NLTermMetadata) {
+                        foundNLTermMetadata = true;
+                        NLTermMetadata nlTermMetadata = (NLTermMetadata) metadataObj;
+                        for (String derivedLemma : nlTermMetadata.getDerivedLemmas()) {
+                            stringTerms.add(stringTerm(derivedLemma));
+                        }
+                        for (String stem : nlTermMetadata.getStems()) {
+                            stringTerms.add(stringTerm(stem));
+                        }
+                    }
+                }
+
+                if (!foundNLTermMetadata) {
+                    stringTerms.add(stringTerm(st.getText(stTerm)));
+                }
+
+                semTerm.setOffset(stTerm.getStart());
+                semTerm.setText(st.getText(stTerm));
+                semTerm.setConceptTerms(concTerms);
+                semTerm.setInstanceTerms(entityTerms);
+                semTerm.setStringTerms(stringTerms);
+
+                semTerms.add(semTerm);
+                complexConcepts.add(new ComplexConcept(semTerms));
+            }
+        }
+
+        return new SemanticString(st.getText(), complexConcepts);
+    }
+
+    private static StringTerm stringTerm(String value) {
+        StringTerm ret = new StringTerm();
+        ret.setValue(value);
+        ret.setWeight(1.0);
+        return ret;
+    }
+
+    private static void addMeaning(Meaning m,
+            double probability,
+            List<ConceptTerm> concTerms,
+            List<InstanceTerm> entityTerms,
+            UrlMapper urlMapper) {
+        if (MeaningKind.CONCEPT.equals(m.getKind())) {
+            long id = urlMapper.tryConceptUrlToId(m.getId());
+            if (id != UrlMapper.INVALID_ID) {
+                ConceptTerm concTerm = new ConceptTerm();
+                concTerm.setValue(id);
+                concTerm.setWeight(probability);
+                concTerms.add(concTerm);
+            }
+        } else if (MeaningKind.ENTITY.equals(m.getKind())) {
+            long id = urlMapper.tryEntityUrlToId(m.getId());
+            if (id != UrlMapper.INVALID_ID) {
+                InstanceTerm entityTerm = new InstanceTerm();
+                entityTerm.setValue(id);
+                entityTerm.setWeight(probability);
+                entityTerms.add(entityTerm);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext.benchmarks;
+
+import static eu.trentorise.opendata.semtext.nltext.NLTextConverter.END_OFFSET;
+import static eu.trentorise.opendata.semtext.nltext.NLTextConverter.SENTENCE_END_OFFSET;
+import static eu.trentorise.opendata.semtext.nltext.NLTextConverter.SENTENCE_START_OFFSET;
+import static eu.trentorise.opendata.semtext.nltext.NLTextConverter.START_OFFSET;
+import eu.trentorise.opendata.semtext.nltext.NLTextConverter;
+import it.unitn.disi.sweb.core.nlp.model.NLMeaning;
+import it.unitn.disi.sweb.core.nlp.model.NLMultiWord;
+import it.unitn.disi.sweb.core.nlp.model.NLSenseMeaning;
+import it.unitn.disi.sweb.core.nlp.model.NLSentence;
+import it.unitn.disi.sweb.core.nlp.model.NLText;
+import it.unitn.disi.sweb.core.nlp.model.NLTextUnit;
+import it.unitn.disi.sweb.core.nlp.model.NLToken;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Builds synthetic documents for the benchmarks, the same way
+ * {@code NLTextConverterTest} builds them. Documents are deterministic for
+ * given parameters.
+ *
+ * @author David Leoni
+ */
+final class Fixtures {
+
+    private static final long SEED = 1234L;
+
+    /**
+     * Number of distinct concepts meanings are drawn from, so concepts repeat
+     * across the document like in real texts.
+     */
+    private static final int CONCEPT_POOL_SIZE = 500;
+
+    private static final String WORD = "word";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns an NLText made of {@code sentences} sentences, each with
+     * {@code tokensPerSentence} tokens of text {@code "word"} separated by
+     * spaces. Each token has {@code meaningsPerToken} sense meanings, the
+     * most probable one being selected.
+     *
+     * @param multiwordDensity probability in [0, 1] that a token starts a
+     * multiword spanning it and the following token
+     */
+    static NLText nlText(int sentences, int tokensPerSentence, int meaningsPerToken, double multiwordDensity) {
+        Random random = new Random(SEED);
+
+        StringBuilder sentenceTextb = new StringBuilder();
+        for (int i = 0; i < tokensPerSentence; i++) {
+            if (i > 0) {
+                sentenceTextb.append(' ');
+            }
+            sentenceTextb.append(WORD);
+        }
+        sentenceTextb.append('.');
+        String sentenceText = sentenceTextb.toString();
+
+        StringBuilder textb = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            if (i > 0) {
+                textb.append(' ');
+            }
+            textb.append(sentenceText);
+        }
+
+        NLText ret = new NLText(textb.toString());
+        ret.setLanguage("en");
+
+        int sentenceStart = 0;
+        for (int i = 0; i < sentences; i++) {
+            NLSentence sentence = new NLSentence(sentenceText);
+            sentence.setProp(NLTextUnit.PFX, START_OFFSET, sentenceStart);
+            sentence.setProp(NLTextUnit.PFX, END_OFFSET, sentenceStart + sentenceText.length());
+
+            List<NLToken> tokens = new ArrayList<NLToken>(tokensPerSentence);
+            for (int j = 0; j < tokensPerSentence; j++) {
+                int start = j * (WORD.length() + 1);
+                NLToken token = new NLToken(WORD, senseMeanings(random, meaningsPerToken));
+                token.setProp(NLTextUnit.PFX, SENTENCE_START_OFFSET, start);
+                token.setProp(NLTextUnit.PFX, SENTENCE_END_OFFSET, start + WORD.length());
+                token.setSelectedMeaning(mostProbable(token.getMeanings()));
+                token.setDerivedStem(WORD);
+                token.setDerivedLemmas(Arrays.asList(WORD));
+                tokens.add(token);
+            }
+            sentence.setTokens(tokens);
+
+            for (int j = 0; j + 1 < tokensPerSentence; j++) {
+                if (random.nextDouble() < multiwordDensity) {
+                    sentence.addMultiWord(multiword(random, meaningsPerToken, tokens.get(j), tokens.get(j + 1)));
+                    j++;
+                }
+            }
+
+            ret.addSentence(sentence);
+            sentenceStart += sentenceText.length() + 1;
+        }
+        return ret;
+    }
+
+    private static Set<NLMeaning> senseMeanings(Random random, int count) {
+        Set<NLMeaning> ret = new HashSet<NLMeaning>();
+        for (int i = 0; i < count; i++) {
+            ret.add(senseMeaning(random));
+        }
+        return ret;
+    }
+
+    private static NLSenseMeaning senseMeaning(Random random) {
+        long conceptId = random.nextInt(CONCEPT_POOL_SIZE);
+        NLSenseMeaning ret = new NLSenseMeaning();
+        ret.setLemma("lemma" + conceptId);
+        ret.setSummary("summary" + conceptId);
+        ret.setProbability(random.nextFloat());
+
+        Map<String, String> glosses = new HashMap<String, String>();
+        glosses.put("en", "gloss" + conceptId);
+        ret.setProp(NLTextUnit.PFX, NLTextConverter.GLOSS_MAP, glosses);
+        ret.setProp(NLTextUnit.PFX, NLTextConverter.SYNONYMOUS_LEMMAS, Arrays.asList("synonym" + conceptId));
+        ret.setConceptId(conceptId);
+        ret.setObjectID(conceptId);
+        return ret;
+    }
+
+    private static NLMeaning mostProbable(Set<NLMeaning> meanings) {
+        NLMeaning ret = null;
+        for (NLMeaning m : meanings) {
+            if (ret == null || m.getProbability() > ret.getProbability()) {
+                ret = m;
+            }
+        }
+        return ret;
+    }
+
+    private static NLMultiWord multiword(Random random, int meaningsCount, NLToken first, NLToken last) {
+        NLMultiWord ret = new NLMultiWord();
+        Set<NLMeaning> meanings = senseMeanings(random, meaningsCount);
+        ret.setMeanings(meanings);
+        ret.setSelectedMeaning(mostProbable(meanings));
+        ret.setProp(NLTextUnit.PFX, SENTENCE_START_OFFSET, first.getProp(NLTextUnit.PFX, SENTENCE_START_OFFSET));
+        ret.setProp(NLTextUnit.PFX, SENTENCE_END_OFFSET, last.getProp(NLTextUnit.PFX, SENTENCE_END_OFFSET));
+        for (NLToken tok : Arrays.asList(first, last)) {
+            tok.addMultiWord(ret);
+            tok.setUsedInMultiWord(true);
+        }
+        ret.setTokens(Arrays.asList(first, last));
+        return ret;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext.benchmarks;
+
+import eu.trentorise.opendata.disiclient.UrlMapper;
+import eu.trentorise.opendata.semtext.SemText;
+import eu.trentorise.opendata.semtext.nltext.NLTextConverter;
+import eu.trentorise.opendata.semtext.nltext.SemanticStringConverter;
+import it.unitn.disi.sweb.core.nlp.model.NLText;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticString;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures conversion of synthetic NLTexts to SemText and to SemanticString,
+ * either directly or through SemText.
+ *
+ * @author David Leoni
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NLTextConverterBenchmark {
+
+    @Param({"1", "20"})
+    public int sentences;
+
+    @Param({"10", "50"})
+    public int tokensPerSentence;
+
+    @Param({"1", "10"})
+    public int meaningsPerToken;
+
+    @Param({"0.0", "0.3"})
+    public double multiwordDensity;
+
+    private NLTextConverter converter;
+
+    private SemanticStringConverter semanticStringConverter;
+
+    private NLText nltext;
+
+    @Setup
+    public void setup() {
+        UrlMapper urlMapper = UrlMapper.of("http://mysite.org/api");
+        converter = NLTextConverter.of(urlMapper);
+        semanticStringConverter = SemanticStringConverter.of(urlMapper);
+        nltext = Fixtures.nlText(sentences, tokensPerSentence, meaningsPerToken, multiwordDensity);
+    }
+
+    @Benchmark
+    public SemText semText() {
+        return converter.semText(nltext, false);
+    }
+
+    @Benchmark
+    public SemanticString semanticString() {
+        return converter.semanticString(nltext);
+    }
+
+    @Benchmark
+    public SemanticString semanticStringThroughSemText() {
+        return semanticStringConverter.semanticString(converter.semText(nltext, false));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext.benchmarks;
+
+import eu.trentorise.opendata.disiclient.UrlMapper;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures url parsing and generation of {@link UrlMapper}.
+ *
+ * @author David Leoni
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlMapperBenchmark {
+
+    private UrlMapper urlMapper;
+
+    private Long id;
+
+    private String conceptUrl;
+
+    private String entityUrl;
+
+    private String attrDefUrl;
+
+    @Setup
+    public void setup() {
+        urlMapper = UrlMapper.of("http://mysite.org/api");
+        id = 123456L;
+        conceptUrl = urlMapper.conceptIdToUrl(id);
+        entityUrl = urlMapper.entityIdToUrl(id);
+        attrDefUrl = urlMapper.attrDefIdToUrl(id, 654321L);
+    }
+
+    @Benchmark
+    public long conceptUrlToId() {
+        return urlMapper.conceptUrlToId(conceptUrl);
+    }
+
+    @Benchmark
+    public long entityUrlToId() {
+        return urlMapper.entityUrlToId(entityUrl);
+    }
+
+    @Benchmark
+    public long attrDefUrlToId() {
+        return urlMapper.attrDefUrlToId(attrDefUrl);
+    }
+
+    @Benchmark
+    public long attrDefUrlToConceptId() {
+        return urlMapper.attrDefUrlToConceptId(attrDefUrl);
+    }
+
+    @Benchmark
+    public String conceptIdToUrl() {
+        return urlMapper.conceptIdToUrl(id);
+    }
+
+    @Benchmark
+    public String entityIdToUrl() {
+        return urlMapper.entityIdToUrl(id);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.disiclient;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableList;
+import eu.trentorise.opendata.commons.TodUtils;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Converts urls of many knowledge base endpoints, routing each url to the
+ * {@link UrlMapper} of its endpoint. Plain urls are routed in a single
+ * left-to-right scan over a trie holding the url prefixes of all endpoints,
+ * so lookups cost O(length of the url) regardless of the number of
+ * endpoints. Urls which need {@link java.net.URL} normalization are tried on
+ * each endpoint in order.
+ *
+ * @author David Leoni
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public final class CompositeUrlMapper {
+
+    /**
+     * Endpoint and kind of a url prefix
+     */
+    private static final class Route {
+
+        private final UrlMapper mapper;
+        private final UrlKind kind;
+
+        private Route(UrlMapper mapper, UrlKind kind) {
+            this.mapper = mapper;
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * The result of {@link #classify(java.lang.CharSequence) classifying} an
+     * url: the mapper of its endpoint and its parsed kind and ids.
+     */
+    @Immutable
+    public static final class RoutedUrl {
+
+        private static final RoutedUrl UNKNOWN = new RoutedUrl(null, ParsedUrl.unknown());
+
+        @Nullable
+        private final UrlMapper mapper;
+        private final ParsedUrl parsedUrl;
+
+        private RoutedUrl(@Nullable UrlMapper mapper, ParsedUrl parsedUrl) {
+            this.mapper = mapper;
+            this.parsedUrl = parsedUrl;
+        }
+
+        /**
+         * Returns the mapper of the endpoint of the url, or null if the url
+         * was not recognized.
+         */
+        @Nullable
+        public UrlMapper getMapper() {
+            return mapper;
+        }
+
+        /**
+         * Returns the kind and ids of the url, with kind
+         * {@link UrlKind#UNKNOWN} if the url was not recognized.
+         */
+        public ParsedUrl getParsedUrl() {
+            return parsedUrl;
+        }
+
+        @Override
+        public String toString() {
+            return "RoutedUrl{" + "base=" + (mapper == null ? null : mapper.getBase()) + ", parsedUrl=" + parsedUrl + '}';
+        }
+    }
+
+    private static final UrlKind[] KINDS = {UrlKind.CONCEPT,
+        UrlKind.ENTITY,
+        UrlKind.ENTITY_NEW,
+        UrlKind.ETYPE,
+        UrlKind.ATTR_DEF};
+
+    private final ImmutableList<UrlMapper> mappers;
+
+    private final PrefixTrie<Route> prefixes;
+
+    /**
+     * True if all mappers can parse urls by matching prefixes
+     */
+    private final boolean fastParsing;
+
+    private CompositeUrlMapper(Iterable<String> baseUrls) {
+        checkNotNull(baseUrls);
+        ImmutableList.Builder<UrlMapper> mappersb = ImmutableList.builder();
+        PrefixTrie<Route> trie = new PrefixTrie<Route>();
+        Set<String> bases = new HashSet<String>();
+        boolean fast = true;
+        for (String baseUrl : baseUrls) {
+            UrlMapper mapper = UrlMapper.of(baseUrl);
+            checkArgument(bases.add(mapper.getBase()), "Found duplicate base url: %s", mapper.getBase());
+            mappersb.add(mapper);
+            fast = fast && mapper.isFastParsing();
+            for (UrlKind kind : KINDS) {
+                trie.put(mapper.urlPrefix(kind), new Route(mapper, kind));
+            }
+        }
+        this.mappers = mappersb.build();
+        checkArgument(!mappers.isEmpty(), "Composite url mapper needs at least one base url!");
+        this.prefixes = trie;
+        this.fastParsing = fast;
+    }
+
+    /**
+     * Returns a mapper for provided endpoint urls, like
+     * 'http://entitypedia.org/api'
+     *
+     * @throws IllegalArgumentException if no urls are provided or if they
+     * are duplicated
+     */
+    public static CompositeUrlMapper of(String... baseUrls) {
+        return new CompositeUrlMapper(Arrays.asList(baseUrls));
+    }
+
+    /**
+     * Returns a mapper for provided endpoint urls, like
+     * 'http://entitypedia.org/api'
+     *
+     * @throws IllegalArgumentException if no urls are provided or if they
+     * are duplicated
+     */
+    public static CompositeUrlMapper of(Iterable<String> baseUrls) {
+        return new CompositeUrlMapper(baseUrls);
+    }
+
+    /**
+     * Returns the mappers of the endpoints, in the order they were provided.
+     * Use them to generate urls for a given endpoint.
+     */
+    public ImmutableList<UrlMapper> getMappers() {
+        return mappers;
+    }
+
+    /**
+     * Returns the mapper of the endpoint at given position.
+     */
+    public UrlMapper getMapper(int index) {
+        return mappers.get(index);
+    }
+
+    /**
+     * Returns the mapper of given endpoint url, or null if not present.
+     *
+     * @param baseUrl with or without trailing slash
+     */
+    @Nullable
+    public UrlMapper getMapper(String baseUrl) {
+        checkNotNull(baseUrl);
+        String base = TodUtils.removeTrailingSlash(baseUrl);
+        for (UrlMapper mapper : mappers) {
+            if (mapper.getBase().equals(base)) {
+                return mapper;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds out the endpoint, kind and ids of provided url.
+     *
+     * @return the routed url. If the url is not recognized by any endpoint
+     * its mapper is null and its kind is {@link UrlKind#UNKNOWN}
+     * @see UrlMapper#classify(java.lang.CharSequence)
+     */
+    public RoutedUrl classify(CharSequence url) {
+        checkNotNull(url);
+        if (fastParsing) {
+            PrefixTrie.Node<Route> node = prefixes.longestMatch(url);
+            if (node != null) {
+                Route route = node.getValue();
+                ParsedUrl parsedUrl = route.mapper.scanParsedUrl(route.kind, url, node.getDepth());
+                if (parsedUrl != null) {
+                    return new RoutedUrl(route.mapper, parsedUrl);
+                }
+            }
+            if (UrlMapper.isPlainUrl(url)) {
+                return RoutedUrl.UNKNOWN;
+            }
+        }
+        for (UrlMapper mapper : mappers) {
+            ParsedUrl parsedUrl = mapper.classify(url);
+            if (parsedUrl.isKnown()) {
+                return new RoutedUrl(mapper, parsedUrl);
+            }
+        }
+        return RoutedUrl.UNKNOWN;
+    }
+
+    /**
+     * Returns the mapper of the endpoint of provided url, or null if the url
+     * is not recognized by any endpoint.
+     */
+    @Nullable
+    public UrlMapper route(CharSequence url) {
+        return classify(url).getMapper();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.disiclient;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded direct-mapped cache of urls made by appending a numerical id to a
+ * prefix. Each id can only live in one slot, so lookups take no locks nor
+ * boxing, and a newer id evicts the older one sharing its slot. While an id
+ * stays cached the same String instance is returned for it.
+ *
+ * @author David Leoni
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+final class IdUrlCache {
+
+    private static final int MAX_SIZE = 1 << 30;
+
+    /**
+     * Immutable, so it can be safely read from any thread without locks.
+     */
+    private static final class Entry {
+
+        private final long id;
+        private final String url;
+
+        private Entry(long id, String url) {
+            this.id = id;
+            this.url = url;
+        }
+    }
+
+    private final String prefix;
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+
+    /**
+     * @param size the number of slots, rounded up to a power of two
+     */
+    IdUrlCache(String prefix, int size) {
+        checkNotNull(prefix);
+        checkArgument(size > 0, "Cache size must be greater than zero! Found %s", size);
+        int capacity = size >= MAX_SIZE ? MAX_SIZE : Integer.highestOneBit(size - 1) << 1;
+        if (capacity == 0) {
+            capacity = 1;
+        }
+        this.prefix = prefix;
+        this.entries = new AtomicReferenceArray<Entry>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the url made by prefix followed by {@code id}.
+     */
+    String url(long id) {
+        int h = (int) (id ^ (id >>> 32));
+        int i = (h ^ (h >>> 16)) & mask;
+        Entry entry = entries.get(i);
+        if (entry != null && entry.id == id) {
+            return entry.url;
+        }
+        String ret = prefix + id;
+        entries.lazySet(i, new Entry(id, ret));
+        return ret;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.disiclient;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The result of {@link UrlMapper#classify(java.lang.CharSequence) classifying}
+ * an url: its kind and its numerical ids.
+ *
+ * @author David Leoni
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public final class ParsedUrl {
+
+    private static final ParsedUrl UNKNOWN = new ParsedUrl(UrlKind.UNKNOWN, UrlMapper.INVALID_ID, UrlMapper.INVALID_ID);
+
+    private final UrlKind kind;
+    private final long id;
+    private final long conceptId;
+
+    private ParsedUrl(UrlKind kind, long id, long conceptId) {
+        checkNotNull(kind);
+        this.kind = kind;
+        this.id = id;
+        this.conceptId = conceptId;
+    }
+
+    /**
+     * Returns the kind of the url, {@link UrlKind#UNKNOWN} if it wasn't
+     * recognized.
+     */
+    public UrlKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the id found in the url, or {@link UrlMapper#INVALID_ID} if the
+     * url wasn't recognized.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the concept id of attribute definition urls, or
+     * {@link UrlMapper#INVALID_ID} for other kinds of urls.
+     */
+    public long getConceptId() {
+        return conceptId;
+    }
+
+    /**
+     * Returns true if the url was recognized.
+     */
+    public boolean isKnown() {
+        return kind != UrlKind.UNKNOWN;
+    }
+
+    /**
+     * Returns a parsed url of given kind with no concept id.
+     */
+    public static ParsedUrl of(UrlKind kind, long id) {
+        return new ParsedUrl(kind, id, UrlMapper.INVALID_ID);
+    }
+
+    /**
+     * Returns a parsed url of given kind with a concept id, as for
+     * attribute definitions.
+     */
+    public static ParsedUrl of(UrlKind kind, long id, long conceptId) {
+        return new ParsedUrl(kind, id, conceptId);
+    }
+
+    /**
+     * Returns the result for urls which are not recognized.
+     */
+    public static ParsedUrl unknown() {
+        return UNKNOWN;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 59 * hash + this.kind.hashCode();
+        hash = 59 * hash + (int) (this.id ^ (this.id >>> 32));
+        hash = 59 * hash + (int) (this.conceptId ^ (this.conceptId >>> 32));
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final ParsedUrl other = (ParsedUrl) obj;
+        if (this.kind != other.kind) {
+            return false;
+        }
+        if (this.id != other.id) {
+            return false;
+        }
+        if (this.conceptId != other.conceptId) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ParsedUrl{" + "kind=" + kind + ", id=" + id + ", conceptId=" + conceptId + '}';
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.disiclient;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Minimal character trie mapping string prefixes to values, used to match urls
+ * against many prefixes in a single left-to-right scan. Lookups cost
+ * O(length of the input) regardless of the number of prefixes. <br/>
+ * <br/>
+ * The trie is only modified while building its owner, afterwards it must
+ * be read only, and then it is safe to share among threads.
+ *
+ * @author David Leoni
+ */
+@ParametersAreNonnullByDefault
+final class PrefixTrie<V> {
+
+    /**
+     * A node of the trie. Nodes reached by a whole key hold a value.
+     */
+    static final class Node<V> {
+
+        private static final char[] NO_CHARS = new char[0];
+        private static final Object[] NO_NODES = new Object[0];
+
+        private final int depth;
+        private char[] chars;
+        private Object[] children;
+        @Nullable
+        private V value;
+
+        private Node(int depth) {
+            this.depth = depth;
+            this.chars = NO_CHARS;
+            this.children = NO_NODES;
+        }
+
+        /**
+         * Returns the value of the key ending at this node, if any.
+         */
+        @Nullable
+        V getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the length of the key ending at this node.
+         */
+        int getDepth() {
+            return depth;
+        }
+
+        @Nullable
+        @SuppressWarnings("unchecked")
+        private Node<V> child(char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return (Node<V>) children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node<V> addChild(char c) {
+            Node<V> ret = new Node<V>(depth + 1);
+            int n = chars.length;
+            char[] newChars = new char[n + 1];
+            Object[] newChildren = new Object[n + 1];
+            System.arraycopy(chars, 0, newChars, 0, n);
+            System.arraycopy(children, 0, newChildren, 0, n);
+            newChars[n] = c;
+            newChildren[n] = ret;
+            chars = newChars;
+            children = newChildren;
+            return ret;
+        }
+    }
+
+    private final Node<V> root = new Node<V>(0);
+
+    /**
+     * Associates {@code value} to {@code key}, replacing any previous value.
+     */
+    void put(CharSequence key, V value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        checkArgument(key.length() > 0, "Key can't be empty!");
+        Node<V> node = root;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            Node<V> child = node.child(c);
+            if (child == null) {
+                child = node.addChild(c);
+            }
+            node = child;
+        }
+        node.value = value;
+    }
+
+    /**
+     * Returns the value of exactly {@code key}, if any.
+     */
+    @Nullable
+    V get(CharSequence key) {
+        Node<V> node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Returns the node of the longest key which is a prefix of {@code s}, or
+     * null if no key is a prefix of it. The length of the matched key is
+     * {@link Node#getDepth()}.
+     */
+    @Nullable
+    Node<V> longestMatch(CharSequence s) {
+        Node<V> ret = null;
+        Node<V> node = root;
+        for (int i = 0; i < s.length(); i++) {
+            node = node.child(s.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                ret = node;
+            }
+        }
+        return ret;
+    }
+}
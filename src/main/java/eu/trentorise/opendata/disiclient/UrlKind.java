@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.disiclient;
+
+/**
+ * Kinds of resource urls handled by {@link UrlMapper}
+ *
+ * @author David Leoni
+ */
+public enum UrlKind {
+    /**
+     * Url like 'http://my-website.com/concepts/123'
+     */
+    CONCEPT,
+    /**
+     * Url like 'http://my-website.com/instances/123'
+     */
+    ENTITY,
+    /**
+     * Url like 'http://my-website.com/instances/new/123'
+     */
+    ENTITY_NEW,
+    /**
+     * Url like 'http://my-website.com/types/123'
+     */
+    ETYPE,
+    /**
+     * Url like 'http://my-website.com/attributedefinitions/123?debugConceptId=456'
+     */
+    ATTR_DEF,
+    /**
+     * Url not recognized by the mapper
+     */
+    UNKNOWN
+}
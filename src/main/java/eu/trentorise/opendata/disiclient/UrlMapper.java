@@ -15,14 +15,19 @@
  */
 package eu.trentorise.opendata.disiclient;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Multimap;
 import eu.trentorise.opendata.commons.TodUtils;
 import static eu.trentorise.opendata.commons.validation.Preconditions.checkNotEmpty;
 import it.unitn.disi.sweb.webapi.model.kb.types.AttributeDefinition;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.Immutable;
@@ -51,20 +56,183 @@ public final class UrlMapper {
 
     private static final UrlMapper INSTANCE = new UrlMapper();
 
+    /**
+     * Mappers in use, so equal bases share one mapper and its caches. Values
+     * are weakly referenced, unused mappers get garbage collected.
+     */
+    private static final ConcurrentMap<RegistryKey, UrlMapper> REGISTRY = new MapMaker().weakValues().makeMap();
+
+    static {
+        REGISTRY.put(new RegistryKey(INSTANCE.base, 0), INSTANCE);
+    }
+
+    /**
+     * Key of mappers in the {@link #REGISTRY}
+     */
+    private static final class RegistryKey {
+
+        private final String base;
+        private final int idCacheSize;
+
+        private RegistryKey(String base, int idCacheSize) {
+            this.base = base;
+            this.idCacheSize = idCacheSize;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 5;
+            hash = 37 * hash + this.base.hashCode();
+            hash = 37 * hash + this.idCacheSize;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final RegistryKey other = (RegistryKey) obj;
+            if (!this.base.equals(other.base)) {
+                return false;
+            }
+            if (this.idCacheSize != other.idCacheSize) {
+                return false;
+            }
+            return true;
+        }
+    }
+
     private static final String DEBUG_GLOBAL_CONCEPT_ID = "debugGlobalConceptId";
     private static final String DEBUG_CONCEPT_ID = "debugConceptId";
     private static final String DEBUG_TYPE_ID = "debugTypeId";
 
-    private String base;
+    /**
+     * Returned by {@code try*UrlToId} methods when the url can't be parsed.
+     */
+    public static final long INVALID_ID = Long.MIN_VALUE;
+
+    /**
+     * Returned by {@link #scanId(java.lang.String, java.lang.CharSequence) scanId}
+     * when the fast parser can't handle the url.
+     */
+    private static final long NOT_SCANNED = Long.MIN_VALUE;
+
+    private final String base;
+
+    /**
+     * Full url prefixes like 'http://my-website.com/concepts/'
+     */
+    private final String conceptUrlPrefix;
+    private final String entityUrlPrefix;
+    private final String entityNewUrlPrefix;
+    private final String etypeUrlPrefix;
+    private final String attrDefUrlPrefix;
+
+    /**
+     * True if urls can be matched against the prefixes as they are, see
+     * {@link #isCanonicalBase(java.lang.String)}
+     */
+    private final boolean fastParsing;
+
+    /**
+     * The base without protocol and path, like 'my-website.com:8080'
+     */
+    private final String authority;
+
+    /**
+     * Maps the full url prefixes to their kinds
+     */
+    private final PrefixTrie<UrlKind> prefixes;
+
+    /**
+     * Caches of generated urls, null if disabled
+     */
+    @Nullable
+    private final IdUrlCache conceptUrls;
+    @Nullable
+    private final IdUrlCache entityUrls;
+    @Nullable
+    private final IdUrlCache entityNewUrls;
+    @Nullable
+    private final IdUrlCache etypeUrls;
 
     private UrlMapper() {
-        this.base = "http://localhost";
+        this("http://localhost");
     }
 
     private UrlMapper(String base) {
-        this();
+        this(base, 0);
+    }
+
+    /**
+     * @param idCacheSize if 0 generated urls are not cached
+     */
+    private UrlMapper(String base, int idCacheSize) {
         checkNotNull(base);
+        checkArgument(idCacheSize >= 0, "Id cache size can't be negative! Found %s", idCacheSize);
         this.base = TodUtils.removeTrailingSlash(base);
+        this.conceptUrlPrefix = this.base + CONCEPT_PREFIX + "/";
+        this.entityUrlPrefix = this.base + ENTITY_PREFIX + "/";
+        this.entityNewUrlPrefix = this.base + ENTITY_PREFIX + "/new/";
+        this.etypeUrlPrefix = this.base + ETYPE_PREFIX + "/";
+        this.attrDefUrlPrefix = this.base + ATTR_DEF_PREFIX + "/";
+        this.fastParsing = isCanonicalBase(this.base);
+        this.authority = authority(this.base);
+        this.prefixes = new PrefixTrie<UrlKind>();
+        this.prefixes.put(conceptUrlPrefix, UrlKind.CONCEPT);
+        this.prefixes.put(entityUrlPrefix, UrlKind.ENTITY);
+        this.prefixes.put(entityNewUrlPrefix, UrlKind.ENTITY_NEW);
+        this.prefixes.put(etypeUrlPrefix, UrlKind.ETYPE);
+        this.prefixes.put(attrDefUrlPrefix, UrlKind.ATTR_DEF);
+        if (idCacheSize > 0) {
+            this.conceptUrls = new IdUrlCache(conceptUrlPrefix, idCacheSize);
+            this.entityUrls = new IdUrlCache(entityUrlPrefix, idCacheSize);
+            this.entityNewUrls = new IdUrlCache(entityNewUrlPrefix, idCacheSize);
+            this.etypeUrls = new IdUrlCache(etypeUrlPrefix, idCacheSize);
+        } else {
+            this.conceptUrls = null;
+            this.entityUrls = null;
+            this.entityNewUrls = null;
+            this.etypeUrls = null;
+        }
+    }
+
+    /**
+     * Returns the authority of {@code base}, or the empty string if it can't
+     * be determined.
+     */
+    private static String authority(String base) {
+        try {
+            String ret = new URL(base).getAuthority();
+            return ret == null ? "" : ret;
+        }
+        catch (MalformedURLException ex) {
+            return "";
+        }
+    }
+
+    /**
+     * Returns true if {@code base} is left untouched by {@link URL} parsing
+     * (lowercase protocol, no dot segments, query, fragment or surrounding
+     * whitespace). Only in this case a url which starts with one of the
+     * prefixes is guaranteed to be read the same way by
+     * {@link #parseIdFromPrefix(java.lang.String, java.lang.String) the URL based parser}.
+     */
+    private static boolean isCanonicalBase(String base) {
+        if (base.contains("/.")) {
+            return false;
+        }
+        try {
+            URL u = new URL(base);
+            return base.equals(u.getProtocol() + "://" + u.getAuthority() + u.getPath());
+        }
+        catch (MalformedURLException ex) {
+            return false;
+        }
     }
 
     /**
@@ -72,20 +240,158 @@ public final class UrlMapper {
      */
     private long parseId(String s) {
         checkNotNull(s);
-        long ret = Long.parseLong(s);
-        if (ret >= -1) {
-            return ret;
+        return checkParsedId(Long.parseLong(s));
+    }
+
+    /**
+     * Values less than -1 are automatically converted to -1
+     */
+    private static long checkParsedId(long id) {
+        if (id >= -1) {
+            return id;
         } else {
-            LOG.warn("Found id " + ret + " which is less than -1, automatically converting it to -1");
+            LOG.warn("Found id " + id + " which is less than -1, automatically converting it to -1");
             return -1;
         }
     }
 
+    /**
+     * Scans the decimal id which follows {@code urlPrefix} in {@code url} up
+     * to the end of the url or the first '?' or '#', without creating any
+     * object.
+     *
+     * @return the id or {@link #NOT_SCANNED} if {@code url} doesn't start
+     * with {@code urlPrefix} or the id is not made of an optional minus sign
+     * and digits or doesn't fit a long.
+     */
+    private static long scanId(String urlPrefix, CharSequence url) {
+        int start = urlPrefix.length();
+        if (url.length() <= start) {
+            return NOT_SCANNED;
+        }
+        for (int i = 0; i < start; i++) {
+            if (url.charAt(i) != urlPrefix.charAt(i)) {
+                return NOT_SCANNED;
+            }
+        }
+        return scanId(url, start);
+    }
+
+    /**
+     * Scans the decimal id which starts at position {@code start} of
+     * {@code url}, see {@link #scanId(java.lang.String, java.lang.CharSequence)}
+     */
+    private static long scanId(CharSequence url, int start) {
+        int end = start;
+        int len = url.length();
+        while (end < len && url.charAt(end) != '?' && url.charAt(end) != '#') {
+            end++;
+        }
+        return scanId(url, start, end);
+    }
+
+    /**
+     * Scans the decimal id which spans from position {@code start} included
+     * to {@code end} excluded of {@code url}.
+     *
+     * @return the id or {@link #NOT_SCANNED} if the range is not made of an
+     * optional minus sign and digits or doesn't fit a long.
+     */
+    private static long scanId(CharSequence url, int start, int end) {
+        int len = end;
+        if (len <= start) {
+            return NOT_SCANNED;
+        }
+
+        // accumulates negatively like Long.parseLong to reach Long.MIN_VALUE
+        int i = start;
+        boolean negative = url.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long ret = 0;
+        int digitsStart = i;
+        for (; i < len; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_SCANNED;
+            }
+            int digit = c - '0';
+            if (ret < multmin) {
+                return NOT_SCANNED;
+            }
+            ret *= 10;
+            if (ret < limit + digit) {
+                return NOT_SCANNED;
+            }
+            ret -= digit;
+        }
+        if (i == digitsStart) {
+            return NOT_SCANNED;
+        }
+        // Long.MIN_VALUE collides with NOT_SCANNED, the URL based parser will handle it
+        return negative ? ret : -ret;
+    }
+
     /**
      * For extracting i.e. id '123' from
      * http://my-website.com/concepts/123?some-param=bla
      *
-     * @param prefix prefix like '/concepts/'
+     * Plain urls are parsed in a single pass, anything else (different
+     * protocol case, dot segments, surrounding whitespace, invalid ids...) is
+     * handed to the {@link URL} based parser, so the accepted inputs are
+     * exactly the same.
+     *
+     * @param prefix prefix like '/concepts'
+     * @param urlPrefix full prefix like 'http://my-website.com/concepts/'
+     * @throws IllegalArgumentException on invalid URL
+     */
+    private long parseIdFromPrefix(String prefix, String urlPrefix, String url) {
+        if (fastParsing && url != null) {
+            long id = scanId(urlPrefix, url);
+            if (id != NOT_SCANNED) {
+                return checkParsedId(id);
+            }
+        }
+        return parseIdFromPrefix(prefix, url);
+    }
+
+    /**
+     * Same as {@link #parseIdFromPrefix(java.lang.String, java.lang.String, java.lang.String)}
+     * but returns {@link #INVALID_ID} instead of throwing. Urls which can't
+     * possibly match (missing the base authority or the prefix) are rejected
+     * without going through {@link URL}, so foreign urls cost no exception.
+     */
+    private long tryParseIdFromPrefix(String prefix, String urlPrefix, @Nullable CharSequence url) {
+        if (url == null) {
+            return INVALID_ID;
+        }
+        if (fastParsing) {
+            long id = scanId(urlPrefix, url);
+            if (id != NOT_SCANNED) {
+                return checkParsedId(id);
+            }
+        }
+        String s = url.toString();
+        // URL normalization never creates the authority nor a whole path segment
+        if (!s.contains(prefix + "/") || !s.contains(authority)) {
+            return INVALID_ID;
+        }
+        try {
+            return parseIdFromPrefix(prefix, s);
+        }
+        catch (IllegalArgumentException ex) {
+            return INVALID_ID;
+        }
+    }
+
+    /**
+     * For extracting i.e. id '123' from
+     * http://my-website.com/concepts/123?some-param=bla using {@link URL}
+     *
+     * @param prefix prefix like '/concepts'
      * @throws IllegalArgumentException on invalid URL
      */
     private long parseIdFromPrefix(String prefix, String url) {
@@ -142,7 +448,15 @@ public final class UrlMapper {
      *    
      */
     public long conceptUrlToId(String url) {
-        return parseIdFromPrefix(CONCEPT_PREFIX, url);
+        return parseIdFromPrefix(CONCEPT_PREFIX, conceptUrlPrefix, url);
+    }
+
+    /**
+     * Same as {@link #conceptUrlToId(java.lang.String)} but returns
+     * {@link #INVALID_ID} on unparseable URL instead of throwing.
+     */
+    public long tryConceptUrlToId(@Nullable String url) {
+        return tryParseIdFromPrefix(CONCEPT_PREFIX, conceptUrlPrefix, url);
     }
 
     /**
@@ -155,7 +469,7 @@ public final class UrlMapper {
     public String etypeIdToUrl(Long etypeId) {
         checkValidId(etypeId, "Invalid etype id!");
         checkCongruent(etypeId);
-        return base + ETYPE_PREFIX + "/" + etypeId;
+        return etypeUrls == null ? etypeUrlPrefix + etypeId : etypeUrls.url(etypeId);
     }
 
     /**
@@ -163,10 +477,108 @@ public final class UrlMapper {
      * @throws IllegalArgumentException on unparseable URL
      */
     public long etypeUrlToId(String url) {
-        return parseIdFromPrefix(ETYPE_PREFIX, url);
+        return parseIdFromPrefix(ETYPE_PREFIX, etypeUrlPrefix, url);
+    }
+
+    /**
+     * Same as {@link #etypeUrlToId(java.lang.String)} but returns
+     * {@link #INVALID_ID} on unparseable URL instead of throwing.
+     */
+    public long tryEtypeUrlToId(@Nullable String url) {
+        return tryParseIdFromPrefix(ETYPE_PREFIX, etypeUrlPrefix, url);
     }
 
+    /**
+     * Scans the query of {@code url} for the id held by parameter
+     * {@code paramName}, without decoding it or creating any object. Only
+     * {@link #isPlainUrl(java.lang.CharSequence) plain} http and https urls
+     * whose query has no escapes, '+', ';' nor fragment are handled, so
+     * parameter names and values are the same they would be after decoding.
+     * Other protocols are left to {@link URL}, which may reject them.
+     *
+     * @return the id or {@link #NOT_SCANNED} if the url can't be handled, the
+     * parameter doesn't occur exactly once with a value or its value can't be
+     * scanned.
+     */
+    private static long scanParamId(String paramName, CharSequence url) {
+        int len = url.length();
+        int query = 0;
+        while (query < len && url.charAt(query) != '?') {
+            query++;
+        }
+        if (query == len
+                || !(startsWith(url, "http://") || startsWith(url, "https://"))
+                || !isPlainUrl(url)) {
+            return NOT_SCANNED;
+        }
+
+        int valueStart = -1;
+        int valueEnd = -1;
+        int pairStart = query + 1;
+        while (pairStart <= len) {
+            int eq = -1;
+            int pairEnd = pairStart;
+            for (; pairEnd < len; pairEnd++) {
+                char c = url.charAt(pairEnd);
+                if (c == '&') {
+                    break;
+                }
+                if (c == '%' || c == '+' || c == ';' || c == '#') {
+                    return NOT_SCANNED;
+                }
+                if (c == '=' && eq < 0) {
+                    eq = pairEnd;
+                }
+            }
+            int keyEnd = eq < 0 ? pairEnd : eq;
+            if (keyEnd - pairStart == paramName.length()
+                    && regionMatches(url, pairStart, paramName)) {
+                // a bare key still counts as an occurrence for the full parser
+                if (eq < 0 || valueStart >= 0) {
+                    return NOT_SCANNED;
+                }
+                valueStart = eq + 1;
+                valueEnd = pairEnd;
+            }
+            pairStart = pairEnd + 1;
+        }
+        if (valueStart < 0) {
+            return NOT_SCANNED;
+        }
+        return scanId(url, valueStart, valueEnd);
+    }
+
+    /**
+     * Returns true if {@code cs} starts with {@code prefix}.
+     */
+    private static boolean startsWith(CharSequence cs, String prefix) {
+        return cs.length() >= prefix.length() && regionMatches(cs, 0, prefix);
+    }
+
+    /**
+     * Returns true if {@code s} occurs in {@code cs} at position
+     * {@code start}.
+     */
+    private static boolean regionMatches(CharSequence cs, int start, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (cs.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the id held by a query parameter which must occur exactly once.
+     * Urls the fast scanner can't handle, as well as malformed ones, are
+     * parsed with {@link TodUtils#parseUrlParams(java.lang.String)}, so
+     * errors are reported the same way.
+     */
     private long parseIdFromParam(String paramName, String url) {
+        long id = scanParamId(paramName, url);
+        if (id != NOT_SCANNED) {
+            return checkParsedId(id);
+        }
         Multimap<String, String> params = TodUtils.parseUrlParams(url);
         return parseId(getFirst(params, paramName));
     }
@@ -176,7 +588,15 @@ public final class UrlMapper {
      * @throws IllegalArgumentException on unparseable URL
      */
     public long entityUrlToId(String url) {
-        return parseIdFromPrefix(ENTITY_PREFIX, url);
+        return parseIdFromPrefix(ENTITY_PREFIX, entityUrlPrefix, url);
+    }
+
+    /**
+     * Same as {@link #entityUrlToId(java.lang.String)} but returns
+     * {@link #INVALID_ID} on unparseable URL instead of throwing.
+     */
+    public long tryEntityUrlToId(@Nullable String url) {
+        return tryParseIdFromPrefix(ENTITY_PREFIX, entityUrlPrefix, url);
     }
 
     /**
@@ -188,7 +608,7 @@ public final class UrlMapper {
     // be hard to interpret implicit cast failures.
     public String entityIdToUrl(Long id) {
         checkValidId(id, "Invalid entity id!");
-        return base + ENTITY_PREFIX + "/" + id;
+        return entityUrls == null ? entityUrlPrefix + id : entityUrls.url(id);
     }
 
     /**
@@ -196,7 +616,15 @@ public final class UrlMapper {
      * @throws IllegalArgumentException on unparseable URL
      */
     public long entityNewUrlToId(String url) {
-        return parseIdFromPrefix(ENTITY_PREFIX + "/new", url);
+        return parseIdFromPrefix(ENTITY_PREFIX + "/new", entityNewUrlPrefix, url);
+    }
+
+    /**
+     * Same as {@link #entityNewUrlToId(java.lang.String)} but returns
+     * {@link #INVALID_ID} on unparseable URL instead of throwing.
+     */
+    public long tryEntityNewUrlToId(@Nullable String url) {
+        return tryParseIdFromPrefix(ENTITY_PREFIX + "/new", entityNewUrlPrefix, url);
     }
 
     /**
@@ -208,7 +636,7 @@ public final class UrlMapper {
     // be hard to interpret implicit cast failures.
     public String entityNewIdToUrl(Long id) {
         checkValidId(id, "Invalid entity id!");
-        return base + ENTITY_PREFIX + "/new/" + id;
+        return entityNewUrls == null ? entityNewUrlPrefix + id : entityNewUrls.url(id);
     }
 
     private void checkCongruent(long... ids) {
@@ -245,7 +673,7 @@ public final class UrlMapper {
     // be hard to interpret implicit cast failures.
     public String conceptIdToUrl(Long id) {
         checkValidId(id, "Invalid concept id!");
-        return base + CONCEPT_PREFIX + "/" + id;
+        return conceptUrls == null ? conceptUrlPrefix + id : conceptUrls.url(id);
     }
 
     /**
@@ -281,7 +709,7 @@ public final class UrlMapper {
         checkValidId(attrDefId, "Invalid concept id!");
         checkValidId(conceptId, "Invalid concept id!");
         checkCongruent(attrDefId, conceptId);
-        return base + ATTR_DEF_PREFIX + "/" + attrDefId + "?" + DEBUG_CONCEPT_ID + "=" + conceptId;
+        return attrDefUrlPrefix + attrDefId + "?" + DEBUG_CONCEPT_ID + "=" + conceptId;
     }
 
     /**
@@ -293,7 +721,308 @@ public final class UrlMapper {
      * @see #attrDefUrlToConceptId(java.lang.String)
      */
     public long attrDefUrlToId(String url) {
-        return parseIdFromPrefix(ATTR_DEF_PREFIX, url);
+        return parseIdFromPrefix(ATTR_DEF_PREFIX, attrDefUrlPrefix, url);
+    }
+
+    /**
+     * Same as {@link #attrDefUrlToId(java.lang.String)} but returns
+     * {@link #INVALID_ID} on unparseable URL instead of throwing.
+     */
+    public long tryAttrDefUrlToId(@Nullable String url) {
+        return tryParseIdFromPrefix(ATTR_DEF_PREFIX, attrDefUrlPrefix, url);
+    }
+
+    /**
+     * Same as {@link #attrDefUrlToConceptId(java.lang.String)} but returns
+     * {@link #INVALID_ID} on unparseable URL instead of throwing.
+     */
+    private long tryAttrDefUrlToConceptId(String url) {
+        long id = scanParamId(DEBUG_CONCEPT_ID, url);
+        if (id != NOT_SCANNED) {
+            return checkParsedId(id);
+        }
+        try {
+            return attrDefUrlToConceptId(url);
+        }
+        catch (IllegalArgumentException ex) {
+            return INVALID_ID;
+        }
+    }
+
+    /**
+     * Finds out the kind and the ids of the provided url. Plain urls are
+     * matched against all the known prefixes in a single left-to-right scan,
+     * other urls are checked with the {@code try*UrlToId} methods. The
+     * returned kind is the one whose {@code *UrlToId} method would accept the
+     * url, preferring {@link UrlKind#ENTITY_NEW} to {@link UrlKind#ENTITY}.
+     *
+     * @return the parsed url, with kind {@link UrlKind#UNKNOWN} if the url is
+     * not recognized. For attribute definitions the concept id is
+     * {@link #INVALID_ID} if not present in the url.
+     */
+    public ParsedUrl classify(CharSequence url) {
+        checkNotNull(url);
+        if (fastParsing) {
+            PrefixTrie.Node<UrlKind> node = prefixes.longestMatch(url);
+            if (node != null) {
+                ParsedUrl ret = scanParsedUrl(node.getValue(), url, node.getDepth());
+                if (ret != null) {
+                    return ret;
+                }
+            }
+            if (isPlainUrl(url)) {
+                return ParsedUrl.unknown();
+            }
+        }
+        return classifySlow(url.toString());
+    }
+
+    /**
+     * Returns true if {@link URL} parsing would leave {@code url} untouched
+     * up to its query or fragment: no surrounding whitespace, no 'url:'
+     * prefix, lowercase protocol followed by '://' and no dot segments. If
+     * such an url doesn't start with a url prefix followed by a plain id, no
+     * {@code *UrlToId} method of a mapper with
+     * {@link #isCanonicalBase(java.lang.String) canonical base} accepts it.
+     */
+    static boolean isPlainUrl(CharSequence url) {
+        int len = url.length();
+        if (len == 0 || url.charAt(0) <= ' ' || url.charAt(len - 1) <= ' ') {
+            return false;
+        }
+        int i = 0;
+        while (i < len && url.charAt(i) != ':') {
+            char c = url.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return false;
+            }
+            i++;
+        }
+        if (i == 3 && "url".contentEquals(url.subSequence(0, 3))) {
+            return false;
+        }
+        if (i + 2 >= len || url.charAt(i + 1) != '/' || url.charAt(i + 2) != '/') {
+            return false;
+        }
+        for (int j = i + 2; j < len - 1; j++) {
+            if (url.charAt(j) == '/' && url.charAt(j + 1) == '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the id starting at position {@code start} of an url of given
+     * kind.
+     *
+     * @return the parsed url or null if the id can't be scanned.
+     */
+    @Nullable
+    ParsedUrl scanParsedUrl(UrlKind kind, CharSequence url, int start) {
+        long id = scanId(url, start);
+        if (id == NOT_SCANNED) {
+            return null;
+        }
+        if (UrlKind.ATTR_DEF == kind) {
+            return ParsedUrl.of(kind, checkParsedId(id), tryAttrDefUrlToConceptId(url.toString()));
+        } else {
+            return ParsedUrl.of(kind, checkParsedId(id));
+        }
+    }
+
+    /**
+     * Returns true if urls can be parsed by matching url prefixes as they
+     * are.
+     */
+    boolean isFastParsing() {
+        return fastParsing;
+    }
+
+    private ParsedUrl classifySlow(String url) {
+        long id = tryEntityNewUrlToId(url);
+        if (id != INVALID_ID) {
+            return ParsedUrl.of(UrlKind.ENTITY_NEW, id);
+        }
+        id = tryEntityUrlToId(url);
+        if (id != INVALID_ID) {
+            return ParsedUrl.of(UrlKind.ENTITY, id);
+        }
+        id = tryConceptUrlToId(url);
+        if (id != INVALID_ID) {
+            return ParsedUrl.of(UrlKind.CONCEPT, id);
+        }
+        id = tryEtypeUrlToId(url);
+        if (id != INVALID_ID) {
+            return ParsedUrl.of(UrlKind.ETYPE, id);
+        }
+        id = tryAttrDefUrlToId(url);
+        if (id != INVALID_ID) {
+            return ParsedUrl.of(UrlKind.ATTR_DEF, id, tryAttrDefUrlToConceptId(url));
+        }
+        return ParsedUrl.unknown();
+    }
+
+    /**
+     * Returns the path prefix like '/concepts' of urls of given kind.
+     *
+     * @throws IllegalArgumentException if kind is {@link UrlKind#UNKNOWN}
+     */
+    private static String pathPrefix(UrlKind kind) {
+        switch (kind) {
+            case CONCEPT:
+                return CONCEPT_PREFIX;
+            case ENTITY:
+                return ENTITY_PREFIX;
+            case ENTITY_NEW:
+                return ENTITY_PREFIX + "/new";
+            case ETYPE:
+                return ETYPE_PREFIX;
+            case ATTR_DEF:
+                return ATTR_DEF_PREFIX;
+            default:
+                throw new IllegalArgumentException("Unsupported url kind: " + kind);
+        }
+    }
+
+    /**
+     * Returns the full prefix like 'http://my-website.com/concepts/' of urls
+     * of given kind.
+     *
+     * @throws IllegalArgumentException if kind is {@link UrlKind#UNKNOWN}
+     */
+    String urlPrefix(UrlKind kind) {
+        switch (kind) {
+            case CONCEPT:
+                return conceptUrlPrefix;
+            case ENTITY:
+                return entityUrlPrefix;
+            case ENTITY_NEW:
+                return entityNewUrlPrefix;
+            case ETYPE:
+                return etypeUrlPrefix;
+            case ATTR_DEF:
+                return attrDefUrlPrefix;
+            default:
+                throw new IllegalArgumentException("Unsupported url kind: " + kind);
+        }
+    }
+
+    /**
+     * Returns true if {@code url} is exactly the url of given kind the mapper
+     * gives for {@code id}, checking the prefix and the id suffix without
+     * parsing.
+     *
+     * @throws IllegalArgumentException if kind is {@link UrlKind#UNKNOWN}
+     */
+    public boolean isUrlOf(UrlKind kind, String url, long id) {
+        checkNotNull(url);
+        String prefix = urlPrefix(kind);
+        String suffix = Long.toString(id);
+        return url.length() == prefix.length() + suffix.length()
+                && url.startsWith(prefix)
+                && url.endsWith(suffix);
+    }
+
+    @Nullable
+    private IdUrlCache urlCache(UrlKind kind) {
+        switch (kind) {
+            case CONCEPT:
+                return conceptUrls;
+            case ENTITY:
+                return entityUrls;
+            case ENTITY_NEW:
+                return entityNewUrls;
+            case ETYPE:
+                return etypeUrls;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Converts many ids of the same kind to urls, as by calling i.e.
+     * {@link #conceptIdToUrl(java.lang.Long)} on each of them but without
+     * boxing.
+     *
+     * @param kind the kind of the ids. {@link UrlKind#ATTR_DEF} is not
+     * supported as attribute definition urls also need a concept id.
+     * @param ids if unknown use -1
+     * @return the urls, in the same order as {@code ids}
+     * @throws IllegalArgumentException on unsupported kind or ids less than -1
+     */
+    public String[] idsToUrls(UrlKind kind, long[] ids) {
+        checkNotNull(kind);
+        checkNotNull(ids);
+        checkArgument(UrlKind.ATTR_DEF != kind, "Attribute definition urls can't be generated from ids alone!");
+        String urlPrefix = urlPrefix(kind);
+        IdUrlCache cache = urlCache(kind);
+
+        String[] ret = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            long id = ids[i];
+            if (id < -1) {
+                throw new IllegalArgumentException("Invalid " + kind + " id at position " + i + " - Found id less than -1: " + id);
+            }
+            ret[i] = cache == null ? urlPrefix + id : cache.url(id);
+        }
+        return ret;
+    }
+
+    /**
+     * Converts many urls of the same kind to ids, as by calling i.e.
+     * {@link #tryConceptUrlToId(java.lang.String)} on each of them.
+     *
+     * @param kind the kind of the urls
+     * @param failures its first {@code urls.length} bits are overwritten: bit
+     * i is set if url at position i couldn't be parsed.
+     * @return the ids, in the same order as {@code urls}. Urls which couldn't
+     * be parsed have id {@link #INVALID_ID}.
+     * @throws IllegalArgumentException if kind is {@link UrlKind#UNKNOWN}
+     */
+    public long[] urlsToIds(UrlKind kind, CharSequence[] urls, BitSet failures) {
+        checkNotNull(kind);
+        checkNotNull(urls);
+        checkNotNull(failures);
+        String prefix = pathPrefix(kind);
+        String urlPrefix = urlPrefix(kind);
+
+        failures.clear(0, urls.length);
+        long[] ret = new long[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            long id = tryParseIdFromPrefix(prefix, urlPrefix, urls[i]);
+            if (id == INVALID_ID) {
+                failures.set(i);
+            }
+            ret[i] = id;
+        }
+        return ret;
+    }
+
+    /**
+     * Same as {@link #urlsToIds(eu.trentorise.opendata.disiclient.UrlKind, java.lang.CharSequence[], java.util.BitSet)}
+     * for a list of urls.
+     */
+    public long[] urlsToIds(UrlKind kind, List<String> urls, BitSet failures) {
+        checkNotNull(kind);
+        checkNotNull(urls);
+        checkNotNull(failures);
+        String prefix = pathPrefix(kind);
+        String urlPrefix = urlPrefix(kind);
+
+        int n = urls.size();
+        failures.clear(0, n);
+        long[] ret = new long[n];
+        int i = 0;
+        for (String url : urls) {
+            long id = tryParseIdFromPrefix(prefix, urlPrefix, url);
+            if (id == INVALID_ID) {
+                failures.set(i);
+            }
+            ret[i] = id;
+            i++;
+        }
+        return ret;
     }
 
     public boolean isEntityURL(String entityUrl) {
@@ -316,6 +1045,14 @@ public final class UrlMapper {
         return attrDefUrl.contains(ATTR_DEF_PREFIX);
     }
 
+    /**
+     * Returns the endpoint url without trailing slash, like
+     * 'http://entitypedia.org/api'
+     */
+    public String getBase() {
+        return base;
+    }
+
     /**
      * Returns default mapper with localhost address.
      */
@@ -325,9 +1062,36 @@ public final class UrlMapper {
 
     /**
      * Returns an UrlMapper with provided endpoint url, like
-     * 'http://entitypedia.org/api'
+     * 'http://entitypedia.org/api'. Mappers are shared: while a mapper is in
+     * use, asking for the same base url (with or without trailing slash)
+     * returns the same instance.
      */
     public static UrlMapper of(String baseUrl) {
-        return new UrlMapper(baseUrl);
+        return of(baseUrl, 0);
+    }
+
+    /**
+     * Returns an UrlMapper with provided endpoint url, like
+     * 'http://entitypedia.org/api', which caches the urls it generates for
+     * concepts, entities and etypes. For each kind up to about
+     * {@code idCacheSize} urls are kept, and while an id stays cached the
+     * same String instance is returned for it, so equal urls in converted
+     * documents share memory. Mappers are shared: while a mapper is in use,
+     * asking for the same base url and cache size returns the same instance.
+     *
+     * @param idCacheSize use 0 to disable caching
+     */
+    public static UrlMapper of(String baseUrl, int idCacheSize) {
+        checkNotNull(baseUrl);
+        RegistryKey key = new RegistryKey(TodUtils.removeTrailingSlash(baseUrl), idCacheSize);
+        UrlMapper ret = REGISTRY.get(key);
+        if (ret == null) {
+            UrlMapper mapper = new UrlMapper(baseUrl, idCacheSize);
+            ret = REGISTRY.putIfAbsent(key, mapper);
+            if (ret == null) {
+                ret = mapper;
+            }
+        }
+        return ret;
     }
 }
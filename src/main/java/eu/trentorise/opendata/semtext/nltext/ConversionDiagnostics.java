@@ -0,0 +1,303 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import com.google.common.collect.ImmutableList;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Collects the problems found while converting a document, counting them by
+ * {@link Issue} and keeping a few sample messages for each kind. Logging of
+ * issues is disabled by default and, when enabled, limited to a maximum
+ * number of records per issue kind. <br/>
+ * <br/>
+ * The same instance can be shared among conversions running in different
+ * threads.
+ *
+ * @author David Leoni
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public final class ConversionDiagnostics {
+
+    private static final Logger LOG = Logger.getLogger(ConversionDiagnostics.class.getName());
+
+    /**
+     * Default number of sample messages kept for each issue kind.
+     */
+    public static final int DEFAULT_MAX_SAMPLES = 5;
+
+    /**
+     * Kinds of problems that may occur during a conversion.
+     */
+    public enum Issue {
+        /**
+         * A string field (lemma, summary, stem, text...) was null
+         */
+        NULL_STRING,
+        /**
+         * A string field (lemma, summary, stem, text...) was empty
+         */
+        EMPTY_STRING,
+        /**
+         * A sense meaning had no gloss map
+         */
+        MISSING_GLOSS,
+        /**
+         * A sense meaning gloss map couldn't be converted
+         */
+        INVALID_GLOSS,
+        /**
+         * A sense meaning had a null or empty lemma
+         */
+        INVALID_LEMMA,
+        /**
+         * A sense meaning had a null synonym
+         */
+        NULL_SYNONYM,
+        /**
+         * A sense meaning had no valid lemma to build its name
+         */
+        NO_VALID_LEMMAS,
+        /**
+         * A meaning was null, of an unsupported type or couldn't be converted
+         */
+        INVALID_MEANING,
+        /**
+         * A complex token was of an unsupported type
+         */
+        UNSUPPORTED_TOKEN,
+        /**
+         * A document had no language
+         */
+        MISSING_LANGUAGE,
+        /**
+         * A token was skipped because it was missing or couldn't be converted
+         */
+        SKIPPED_TOKEN,
+        /**
+         * A sentence was skipped because it couldn't be converted
+         */
+        SKIPPED_SENTENCE,
+        /**
+         * A document was skipped because it was null or couldn't be converted
+         */
+        SKIPPED_DOCUMENT,
+        /**
+         * A term had no {@link NLTermMetadata}
+         */
+        MISSING_TERM_METADATA,
+        /**
+         * A meaning of kind {@link eu.trentorise.opendata.semtext.MeaningKind#UNKNOWN UNKNOWN}
+         * had an id
+         */
+        UNKNOWN_MEANING_WITH_ID,
+        /**
+         * A meaning id couldn't be parsed by the
+         * {@link eu.trentorise.opendata.disiclient.UrlMapper UrlMapper}
+         */
+        INVALID_MEANING_ID
+    }
+
+    /**
+     * An issue as it was reported to a {@link #recording() recording}
+     * instance, so it can be reported again later.
+     */
+    static final class Report {
+
+        private final Issue issue;
+        private final String message;
+        @Nullable
+        private final Object arg;
+        @Nullable
+        private final Throwable ex;
+
+        private Report(Issue issue, String message, @Nullable Object arg, @Nullable Throwable ex) {
+            this.issue = issue;
+            this.message = message;
+            this.arg = arg;
+            this.ex = ex;
+        }
+    }
+
+    private static final Issue[] ISSUES = Issue.values();
+
+    private final int maxSamples;
+    private final int maxLogRecords;
+    private final AtomicLongArray counts;
+    private final List<Queue<String>> samples;
+
+    /**
+     * All the reports received, or null if not recording
+     */
+    @Nullable
+    private final Queue<Report> reports;
+
+    private ConversionDiagnostics(int maxSamples, int maxLogRecords, boolean recording) {
+        checkArgument(maxSamples >= 0, "maxSamples can't be negative! Found %s", maxSamples);
+        checkArgument(maxLogRecords >= 0, "maxLogRecords can't be negative! Found %s", maxLogRecords);
+        this.maxSamples = maxSamples;
+        this.maxLogRecords = maxLogRecords;
+        this.counts = new AtomicLongArray(ISSUES.length);
+        this.samples = new ArrayList<Queue<String>>(ISSUES.length);
+        for (int i = 0; i < ISSUES.length; i++) {
+            samples.add(new ConcurrentLinkedQueue<String>());
+        }
+        this.reports = recording ? new ConcurrentLinkedQueue<Report>() : null;
+    }
+
+    /**
+     * Returns new diagnostics which keep {@link #DEFAULT_MAX_SAMPLES} sample
+     * messages per issue kind and don't log.
+     */
+    public static ConversionDiagnostics of() {
+        return new ConversionDiagnostics(DEFAULT_MAX_SAMPLES, 0, false);
+    }
+
+    /**
+     * Returns new diagnostics.
+     *
+     * @param maxSamples maximum number of sample messages kept for each issue
+     * kind
+     * @param maxLogRecords maximum number of warnings logged for each issue
+     * kind. Use 0 to disable logging.
+     */
+    public static ConversionDiagnostics of(int maxSamples, int maxLogRecords) {
+        return new ConversionDiagnostics(maxSamples, maxLogRecords, false);
+    }
+
+    /**
+     * Returns new diagnostics which don't sample nor log, but keep every
+     * report so it can be passed again to other diagnostics with
+     * {@link #replay(java.util.List) replay}.
+     */
+    static ConversionDiagnostics recording() {
+        return new ConversionDiagnostics(0, 0, true);
+    }
+
+    /**
+     * Returns the issues reported so far to a {@link #recording() recording}
+     * instance, in report order.
+     */
+    ImmutableList<Report> getReports() {
+        checkState(reports != null, "Diagnostics are not recording!");
+        return ImmutableList.copyOf(reports);
+    }
+
+    /**
+     * Reports again provided {@code reports}, as if they had happened here.
+     */
+    void replay(List<Report> reports) {
+        for (Report r : reports) {
+            report(r.issue, r.message, r.arg, r.ex);
+        }
+    }
+
+    /**
+     * Records an issue. The message is only formatted if it needs to be
+     * sampled or logged.
+     *
+     * @param message a {@link MessageFormat} pattern, where {0} is replaced by
+     * {@code arg}
+     * @param ex the exception which caused the issue, if any
+     */
+    void report(Issue issue, String message, @Nullable Object arg, @Nullable Throwable ex) {
+        if (reports != null) {
+            reports.add(new Report(issue, message, arg, ex));
+        }
+        long count = counts.incrementAndGet(issue.ordinal());
+        if (count > maxSamples && count > (long) maxLogRecords + 1) {
+            return;
+        }
+
+        String formatted = MessageFormat.format(message, arg);
+        if (count <= maxSamples) {
+            samples.get(issue.ordinal()).add(formatted);
+        }
+        if (count <= maxLogRecords) {
+            LOG.log(Level.WARNING, formatted, ex);
+        } else if (count == (long) maxLogRecords + 1 && maxLogRecords > 0) {
+            LOG.log(Level.WARNING, "Reached maximum of {0} logged {1} issues, further ones won''t be logged.", new Object[]{maxLogRecords, issue});
+        }
+    }
+
+    /**
+     * Records an issue with no argument and no exception.
+     */
+    void report(Issue issue, String message) {
+        report(issue, message, null, null);
+    }
+
+    /**
+     * Returns how many times {@code issue} occurred.
+     */
+    public long getCount(Issue issue) {
+        checkNotNull(issue);
+        return counts.get(issue.ordinal());
+    }
+
+    /**
+     * Returns the total number of issues occurred.
+     */
+    public long getTotalCount() {
+        long ret = 0;
+        for (int i = 0; i < ISSUES.length; i++) {
+            ret += counts.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the first sample messages recorded for {@code issue}.
+     */
+    public ImmutableList<String> getSamples(Issue issue) {
+        checkNotNull(issue);
+        return ImmutableList.copyOf(samples.get(issue.ordinal()));
+    }
+
+    /**
+     * Returns a summary with the count of each issue that occurred.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ConversionDiagnostics{");
+        boolean first = true;
+        for (Issue issue : ISSUES) {
+            long count = counts.get(issue.ordinal());
+            if (count > 0) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append(issue).append('=').append(count);
+                first = false;
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext;
+
+/**
+ * Which metadata {@link NLTextConverter} attaches to converted terms and
+ * meanings.
+ *
+ * @see NLTextConverter.Builder#setMetadataMode(MetadataMode)
+ * @author David Leoni
+ */
+public enum MetadataMode {
+    /**
+     * Neither terms nor meanings get metadata
+     */
+    NONE(false, false),
+    /**
+     * Only terms get {@link NLTermMetadata}
+     */
+    TERM_ONLY(true, false),
+    /**
+     * Only meanings get {@link NLMeaningMetadata}
+     */
+    MEANING_ONLY(false, true),
+    /**
+     * Terms get {@link NLTermMetadata} and meanings get
+     * {@link NLMeaningMetadata}
+     */
+    FULL(true, true);
+
+    private final boolean termMetadata;
+    private final boolean meaningMetadata;
+
+    private MetadataMode(boolean termMetadata, boolean meaningMetadata) {
+        this.termMetadata = termMetadata;
+        this.meaningMetadata = meaningMetadata;
+    }
+
+    /**
+     * Returns true if terms get {@link NLTermMetadata}
+     */
+    public boolean hasTermMetadata() {
+        return termMetadata;
+    }
+
+    /**
+     * Returns true if meanings get {@link NLMeaningMetadata}
+     */
+    public boolean hasMeaningMetadata() {
+        return meaningMetadata;
+    }
+}
@@ -17,6 +17,7 @@ package eu.trentorise.opendata.semtext.nltext;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import java.io.Serializable;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.Immutable;
 
@@ -36,19 +37,22 @@ public final class NLMeaningMetadata implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private String lemma;
-    private String summary;    
+    private String summary;
+    @Nullable
+    private Long kbId;
 
     private NLMeaningMetadata() {
         this.lemma = "";
         this.summary = "";
     }
 
-    private NLMeaningMetadata(String lemma, String summary) {
+    private NLMeaningMetadata(String lemma, String summary, @Nullable Long kbId) {
         this();
         checkNotNull(lemma);
         checkNotNull(summary);
         this.lemma = lemma;
         this.summary = summary;
+        this.kbId = kbId;
     }
 
     // needed by Jackson
@@ -63,6 +67,10 @@ public final class NLMeaningMetadata implements Serializable {
         this.summary = summary;
     }
 
+    // needed by Jackson
+    private void setKbId(@Nullable Long kbId) {
+        this.kbId = kbId;
+    }
  
     /**
      * Returns the lemma of the meaning. It will be in the same language of the
@@ -80,6 +88,15 @@ public final class NLMeaningMetadata implements Serializable {
         return summary;
     }
 
+    /**
+     * Returns the id of the concept or entity in the knowledge base, that is
+     * the number the meaning url was made from, or null if unknown.
+     */
+    @Nullable
+    public Long getKbId() {
+        return kbId;
+    }
+
     /**
      * Returns an NLMeaningMetadata instance with the given lemma and summary
      *
@@ -89,7 +106,19 @@ public final class NLMeaningMetadata implements Serializable {
      * of the whole SemText containing it.
      */
     public static NLMeaningMetadata of(String lemma, String summary) {
-        return new NLMeaningMetadata(lemma, summary);
+        return new NLMeaningMetadata(lemma, summary, null);
+    }
+
+    /**
+     * Returns an NLMeaningMetadata instance with the given lemma, summary and
+     * knowledge base id.
+     *
+     * @param kbId the id of the concept or entity in the knowledge base, or
+     * null if unknown. See {@link #getKbId()}
+     * @see #of(java.lang.String, java.lang.String)
+     */
+    public static NLMeaningMetadata of(String lemma, String summary, @Nullable Long kbId) {
+        return new NLMeaningMetadata(lemma, summary, kbId);
     }
 
     @Override
@@ -97,6 +126,7 @@ public final class NLMeaningMetadata implements Serializable {
         int hash = 7;
         hash = 47 * hash + (this.lemma != null ? this.lemma.hashCode() : 0);
         hash = 47 * hash + (this.summary != null ? this.summary.hashCode() : 0);
+        hash = 47 * hash + (this.kbId != null ? this.kbId.hashCode() : 0);
         return hash;
     }
 
@@ -115,6 +145,9 @@ public final class NLMeaningMetadata implements Serializable {
         if ((this.summary == null) ? (other.summary != null) : !this.summary.equals(other.summary)) {
             return false;
         }
+        if ((this.kbId == null) ? (other.kbId != null) : !this.kbId.equals(other.kbId)) {
+            return false;
+        }
         return true;
     }
 
@@ -2,12 +2,17 @@ package eu.trentorise.opendata.semtext.nltext;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import eu.trentorise.opendata.commons.Dict;
 import eu.trentorise.opendata.commons.TodUtils;
 import eu.trentorise.opendata.disiclient.UrlMapper;
+import eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics.Issue;
 import it.unitn.disi.sweb.core.nlp.model.NLComplexToken;
 import it.unitn.disi.sweb.core.nlp.model.NLEntityMeaning;
 import it.unitn.disi.sweb.core.nlp.model.NLMeaning;
@@ -18,14 +23,38 @@ import it.unitn.disi.sweb.core.nlp.model.NLSentence;
 import it.unitn.disi.sweb.core.nlp.model.NLText;
 import it.unitn.disi.sweb.core.nlp.model.NLTextUnit;
 import it.unitn.disi.sweb.core.nlp.model.NLToken;
-
+import it.unitn.disi.sweb.webapi.model.eb.sstring.ComplexConcept;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.ConceptTerm;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.InstanceTerm;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticString;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticTerm;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.StringTerm;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.annotation.Nullable;
 
@@ -60,6 +89,16 @@ public final class NLTextConverter {
 
     private static final NLTextConverter INSTANCE = new NLTextConverter();
 
+    /**
+     * Converters in use for each url mapper. Both mappers and converters are
+     * weakly referenced, so unused ones get garbage collected.
+     */
+    private static final ConcurrentMap<UrlMapper, NLTextConverter> REGISTRY = new MapMaker().weakKeys().weakValues().makeMap();
+
+    static {
+        REGISTRY.put(INSTANCE.urlMapper, INSTANCE);
+    }
+
     /**
      * Metadata in semtext objects converted from nltext will have this
      * namespace
@@ -96,16 +135,147 @@ public final class NLTextConverter {
      */
     public static final String GLOSS_MAP = "glossMap";
 
-    private UrlMapper urlMapper;
+    private final UrlMapper urlMapper;
+
+    @Nullable
+    private final Cache<ConceptKey, ConceptParts> conceptCache;
+
+    private final int maxMeanings;
+
+    private final double minProbability;
+
+    private final MetadataMode metadataMode;
+
+    /**
+     * Cached values, as {@code values()} copies the array at each call
+     */
+    private static final MeaningStatus[] MEANING_STATUSES = MeaningStatus.values();
+    private static final MeaningKind[] MEANING_KINDS = MeaningKind.values();
+
+    /**
+     * Orders meanings by ascending probability
+     */
+    private static final Comparator<NLMeaning> PROBABILITY_ORDER = new Comparator<NLMeaning>() {
+        @Override
+        public int compare(NLMeaning m1, NLMeaning m2) {
+            return Double.compare(m1.getProbability(), m2.getProbability());
+        }
+    };
 
     private NLTextConverter() {
-        urlMapper = UrlMapper.of();
+        this(UrlMapper.of());
     }
 
     private NLTextConverter(UrlMapper urlMapper) {
-        this();
         checkNotNull(urlMapper);
         this.urlMapper = urlMapper;
+        this.conceptCache = null;
+        this.maxMeanings = Integer.MAX_VALUE;
+        this.minProbability = 0.0;
+        this.metadataMode = MetadataMode.FULL;
+    }
+
+    private NLTextConverter(Builder builder) {
+        this.urlMapper = builder.urlMapper;
+        if (builder.conceptCacheSize > 0) {
+            Cache<ConceptKey, ConceptParts> cache = CacheBuilder.newBuilder()
+                    .maximumSize(builder.conceptCacheSize)
+                    .recordStats()
+                    .build();
+            this.conceptCache = cache;
+        } else {
+            this.conceptCache = null;
+        }
+        this.maxMeanings = builder.maxMeanings;
+        this.minProbability = builder.minProbability;
+        this.metadataMode = builder.metadataMode;
+    }
+
+    /**
+     * Builder for converters with custom options. Start from
+     * {@link NLTextConverter#builder()}.
+     */
+    public static final class Builder {
+
+        private UrlMapper urlMapper;
+        private long conceptCacheSize;
+        private int maxMeanings;
+        private double minProbability;
+        private MetadataMode metadataMode;
+
+        private Builder() {
+            this.urlMapper = UrlMapper.of();
+            this.conceptCacheSize = 0;
+            this.maxMeanings = Integer.MAX_VALUE;
+            this.minProbability = 0.0;
+            this.metadataMode = MetadataMode.FULL;
+        }
+
+        /**
+         * Sets the url mapper for converting entity/concept ids to urls.
+         * Default is {@link UrlMapper#of()}.
+         */
+        public Builder setUrlMapper(UrlMapper urlMapper) {
+            checkNotNull(urlMapper);
+            this.urlMapper = urlMapper;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concepts whose url, name and description
+         * are kept across conversions. Least recently used concepts are
+         * evicted first. Default is 0, which disables the cache.
+         */
+        public Builder setConceptCacheSize(long conceptCacheSize) {
+            checkArgument(conceptCacheSize >= 0, "Concept cache size can't be negative! Found %s", conceptCacheSize);
+            this.conceptCacheSize = conceptCacheSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of meanings kept for each term, choosing the
+         * ones with highest probability. The selected meaning is always kept.
+         * Default is {@link Integer#MAX_VALUE}, which keeps all meanings.
+         */
+        public Builder setMaxMeanings(int maxMeanings) {
+            checkArgument(maxMeanings > 0, "Max meanings must be greater than zero! Found %s", maxMeanings);
+            this.maxMeanings = maxMeanings;
+            return this;
+        }
+
+        /**
+         * Sets the probability below which meanings of a term are discarded.
+         * The selected meaning is always kept. Default is 0.0, which keeps all
+         * meanings.
+         */
+        public Builder setMinProbability(double minProbability) {
+            checkArgument(minProbability >= 0.0 && minProbability <= 1.0, "Min probability must be within 0.0 and 1.0! Found %s", minProbability);
+            this.minProbability = minProbability;
+            return this;
+        }
+
+        /**
+         * Sets which metadata is attached to converted terms and meanings.
+         * Stems, derived lemmas and summaries are not even read from the
+         * NLText when their metadata is not produced. Default is
+         * {@link MetadataMode#FULL}.
+         */
+        public Builder setMetadataMode(MetadataMode metadataMode) {
+            checkNotNull(metadataMode);
+            this.metadataMode = metadataMode;
+            return this;
+        }
+
+        public NLTextConverter build() {
+            return new NLTextConverter(this);
+        }
+    }
+
+    /**
+     * Returns a builder for converters with custom options.
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
     /**
@@ -119,24 +289,315 @@ public final class NLTextConverter {
     /**
      * Returns a converter that will use the provided url mapper for converting
      * entity/concept ids to urls.
+     * Converters are shared: while a converter is in use, asking for one with
+     * the same url mapper returns the same instance.
      */
     public static NLTextConverter of(UrlMapper urlMapper) {
-        return new NLTextConverter(urlMapper);
+        checkNotNull(urlMapper);
+        NLTextConverter ret = REGISTRY.get(urlMapper);
+        if (ret == null) {
+            NLTextConverter converter = new NLTextConverter(urlMapper);
+            ret = REGISTRY.putIfAbsent(urlMapper, converter);
+            if (ret == null) {
+                ret = converter;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Identity of a concept together with the content of the NLSenseMeaning
+     * it was converted from.
+     */
+    private static final class ConceptKey {
+
+        private final long conceptId;
+        private final Locale locale;
+        @Nullable
+        private final String lemma;
+        @Nullable
+        private final List<?> synonyms;
+        @Nullable
+        private final Map<?, ?> glosses;
+        private final int hash;
+
+        private ConceptKey(long conceptId,
+                Locale locale,
+                @Nullable String lemma,
+                @Nullable List<?> synonyms,
+                @Nullable Map<?, ?> glosses) {
+            this.conceptId = conceptId;
+            this.locale = locale;
+            this.lemma = lemma;
+            this.synonyms = synonyms;
+            this.glosses = glosses;
+
+            int h = 5;
+            h = 37 * h + (int) (conceptId ^ (conceptId >>> 32));
+            h = 37 * h + locale.hashCode();
+            h = 37 * h + (lemma != null ? lemma.hashCode() : 0);
+            h = 37 * h + (synonyms != null ? synonyms.hashCode() : 0);
+            h = 37 * h + (glosses != null ? glosses.hashCode() : 0);
+            this.hash = h;
+        }
+
+        /**
+         * Returns a key with private copies of the synonyms and glosses, so
+         * it is not affected by later changes to the NLSenseMeaning.
+         */
+        private ConceptKey copy() {
+            return new ConceptKey(conceptId,
+                    locale,
+                    lemma,
+                    synonyms == null ? null : Collections.unmodifiableList(new ArrayList<Object>(synonyms)),
+                    glosses == null ? null : Collections.unmodifiableMap(new HashMap<Object, Object>(glosses)));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final ConceptKey other = (ConceptKey) obj;
+            if (this.hash != other.hash
+                    || this.conceptId != other.conceptId
+                    || !this.locale.equals(other.locale)) {
+                return false;
+            }
+            if ((this.lemma == null) ? (other.lemma != null) : !this.lemma.equals(other.lemma)) {
+                return false;
+            }
+            if ((this.synonyms == null) ? (other.synonyms != null) : !this.synonyms.equals(other.synonyms)) {
+                return false;
+            }
+            if ((this.glosses == null) ? (other.glosses != null) : !this.glosses.equals(other.glosses)) {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The parts of a converted concept meaning which don't depend on the
+     * token it was found in.
+     */
+    private static final class ConceptParts {
+
+        private final String url;
+        private final Dict name;
+        private final Dict description;
+        /**
+         * Issues found while converting the parts, reported again each time
+         * they are taken from the cache
+         */
+        private final ImmutableList<ConversionDiagnostics.Report> issues;
+
+        private ConceptParts(String url, Dict name, Dict description, ImmutableList<ConversionDiagnostics.Report> issues) {
+            this.url = url;
+            this.name = name;
+            this.description = description;
+            this.issues = issues;
+        }
+    }
+
+    /**
+     * Returns url, name and description of provided sense meaning, using the
+     * concept cache when enabled. Cached parts report to {@code diag} the
+     * same issues found when they were first converted, so diagnostics don't
+     * depend on the cache content.
+     */
+    private ConceptParts conceptParts(NLSenseMeaning senseMeaning, Locale locale, ConversionDiagnostics diag) {
+        Long id = senseMeaning.getConceptId();
+        if (conceptCache == null || id == null) {
+            return newConceptParts(senseMeaning, locale, diag);
+        }
+
+        Object synonyms = senseMeaning.getProp(NLTextUnit.PFX, SYNONYMOUS_LEMMAS);
+        Object glosses = senseMeaning.getProp(NLTextUnit.PFX, GLOSS_MAP);
+        if ((synonyms != null && !(synonyms instanceof List))
+                || (glosses != null && !(glosses instanceof Map))) {
+            return newConceptParts(senseMeaning, locale, diag);
+        }
+
+        ConceptKey key = new ConceptKey(id, locale, senseMeaning.getLemma(), (List<?>) synonyms, (Map<?, ?>) glosses);
+        ConceptParts ret = conceptCache.getIfPresent(key);
+        if (ret == null) {
+            ConversionDiagnostics recording = ConversionDiagnostics.recording();
+            ConceptParts parts = newConceptParts(senseMeaning, locale, recording);
+            ret = new ConceptParts(parts.url, parts.name, parts.description, recording.getReports());
+            conceptCache.put(key.copy(), ret);
+        }
+        diag.replay(ret.issues);
+        return ret;
+    }
+
+    private ConceptParts newConceptParts(NLSenseMeaning senseMeaning, Locale locale, ConversionDiagnostics diag) {
+        Long id = senseMeaning.getConceptId();
+        return new ConceptParts(
+                id == null ? "" : urlMapper.conceptIdToUrl(id),
+                dictName(senseMeaning, locale, diag),
+                glossToDict(senseMeaning, "Error while extracting description from NLSenseMeaning", diag),
+                ImmutableList.<ConversionDiagnostics.Report>of());
+    }
+
+    /**
+     * Returns the hit/miss statistics of the concept cache. If the cache is
+     * disabled (see {@link Builder#setConceptCacheSize(long)}) all counters
+     * are zero.
+     */
+    public CacheStats getConceptCacheStats() {
+        if (conceptCache == null) {
+            return new CacheStats(0, 0, 0, 0, 0, 0);
+        } else {
+            return conceptCache.stats();
+        }
+    }
+
+    /**
+     * Identity of a converted meaning within a conversion: kind, id and
+     * probability together with the NLMeaning content the converted name,
+     * description and metadata are made of, so meanings with the same id but
+     * different content are not mixed up.
+     */
+    private static final class MeaningKey {
+
+        private final boolean entity;
+        private final long id;
+        private final double probability;
+        private final Locale locale;
+        /**
+         * Null for entities when meaning metadata is not produced
+         */
+        @Nullable
+        private final String lemma;
+        /**
+         * Null when meaning metadata is not produced
+         */
+        @Nullable
+        private final String summary;
+        /**
+         * Synonymous lemmas of concepts
+         */
+        @Nullable
+        private final Object synonyms;
+        /**
+         * Gloss map of concepts or description of entities
+         */
+        @Nullable
+        private final Object description;
+        private final int hash;
+
+        private MeaningKey(boolean entity,
+                long id,
+                double probability,
+                Locale locale,
+                @Nullable String lemma,
+                @Nullable String summary,
+                @Nullable Object synonyms,
+                @Nullable Object description) {
+            this.entity = entity;
+            this.id = id;
+            this.probability = probability;
+            this.locale = locale;
+            this.lemma = lemma;
+            this.summary = summary;
+            this.synonyms = synonyms;
+            this.description = description;
+
+            int h = 3;
+            h = 29 * h + (this.entity ? 1 : 0);
+            h = 29 * h + (int) (this.id ^ (this.id >>> 32));
+            long bits = Double.doubleToLongBits(this.probability);
+            h = 29 * h + (int) (bits ^ (bits >>> 32));
+            h = 29 * h + this.locale.hashCode();
+            h = 29 * h + (this.lemma != null ? this.lemma.hashCode() : 0);
+            h = 29 * h + (this.summary != null ? this.summary.hashCode() : 0);
+            h = 29 * h + (this.synonyms != null ? this.synonyms.hashCode() : 0);
+            h = 29 * h + (this.description != null ? this.description.hashCode() : 0);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final MeaningKey other = (MeaningKey) obj;
+            if (this.hash != other.hash
+                    || this.entity != other.entity
+                    || this.id != other.id
+                    || Double.doubleToLongBits(this.probability) != Double.doubleToLongBits(other.probability)
+                    || !this.locale.equals(other.locale)) {
+                return false;
+            }
+            if ((this.lemma == null) ? (other.lemma != null) : !this.lemma.equals(other.lemma)) {
+                return false;
+            }
+            if ((this.summary == null) ? (other.summary != null) : !this.summary.equals(other.summary)) {
+                return false;
+            }
+            if ((this.synonyms == null) ? (other.synonyms != null) : !this.synonyms.equals(other.synonyms)) {
+                return false;
+            }
+            if ((this.description == null) ? (other.description != null) : !this.description.equals(other.description)) {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * State of the conversion of a single NLText. Meanings with the same kind,
+     * id, probability and content are converted only once per conversion and
+     * shared among terms. Issues are reported to {@code diagnostics}. It is
+     * safe to use the context from multiple threads.
+     */
+    private static final class ConversionContext {
+
+        private final Locale locale;
+        private final boolean checkedByUser;
+        private final ConversionDiagnostics diagnostics;
+        private final ConcurrentMap<MeaningKey, Meaning> meanings;
+
+        private ConversionContext(Locale locale, boolean checkedByUser, ConversionDiagnostics diagnostics) {
+            checkNotNull(locale);
+            checkNotNull(diagnostics);
+            this.locale = locale;
+            this.checkedByUser = checkedByUser;
+            this.diagnostics = diagnostics;
+            this.meanings = new ConcurrentHashMap<MeaningKey, Meaning>();
+        }
     }
 
     /**
-     * Returns a string as a sanitized String. On error logs a warning and
-     * returns the empty string.
+     * Returns a string as a sanitized String. On error reports an issue to
+     * {@code diag} and returns the empty string.
      *
      * @param prependedLogMsg message to prepend to the warn
      */
-    private static String stringToString(@Nullable String string, @Nullable String prependedLogMsg) {
+    private static String stringToString(@Nullable String string, @Nullable String prependedLogMsg, ConversionDiagnostics diag) {
         if (string == null) {
-            LOG.log(Level.WARNING, "{0} -- Found null string", prependedLogMsg);
+            diag.report(Issue.NULL_STRING, "{0} -- Found null string", prependedLogMsg, null);
             return "";
         } else {
             if (string.isEmpty()) {
-                LOG.log(Level.WARNING, "{0} -- Found empty string", prependedLogMsg);
+                diag.report(Issue.EMPTY_STRING, "{0} -- Found empty string", prependedLogMsg, null);
                 return "";
             }
         }
@@ -144,16 +605,16 @@ public final class NLTextConverter {
     }
 
     /**
-     * Returns a gloss hashmap as a sanitized Dict. On error logs a warning and
-     * returns the empty dict.
+     * Returns a gloss hashmap as a sanitized Dict. On error reports an issue
+     * to {@code diag} and returns the empty dict.
      *
      * @param prependedLogMsg message to prepend to the warn
      */
-    private static Dict glossToDict(NLSenseMeaning senseMeaning, @Nullable String prependedLogMsg) {
+    private static Dict glossToDict(NLSenseMeaning senseMeaning, @Nullable String prependedLogMsg, ConversionDiagnostics diag) {
         try {
             Map<String, String> glosses = (Map<String, String>) senseMeaning.getProp(NLTextUnit.PFX, GLOSS_MAP);
             if (glosses == null) {
-                LOG.log(Level.WARNING, "{0}" + " -- Found null " + GLOSS_MAP + ", returning empty dict", prependedLogMsg);
+                diag.report(Issue.MISSING_GLOSS, "{0}" + " -- Found null " + GLOSS_MAP + ", returning empty dict", prependedLogMsg, null);
                 return Dict.of();
             }
             Dict.Builder dictb = Dict.builder();
@@ -169,21 +630,21 @@ public final class NLTextConverter {
 
         }
         catch (Exception ex) {
-            LOG.log(Level.WARNING, String.valueOf(prependedLogMsg) + " -- Error while converting gloss map, returning empty dict", ex);
+            diag.report(Issue.INVALID_GLOSS, "{0} -- Error while converting gloss map, returning empty dict", prependedLogMsg, ex);
             return Dict.of();
         }
     }
 
     /**
-     * Returns a string as a sanitized Dict. On error logs a warning and returns
-     * the empty dict.
+     * Returns a string as a sanitized Dict. On error reports an issue to
+     * {@code diag} and returns the empty dict.
      *
      * @param locale if unknown use {@link Locale#ROOT}
      * @param prependedLogMsg message to prepend to the warn
      */
-    private static Dict stringToDict(@Nullable String lemma, Locale locale, @Nullable String prependedLogMsg) {
+    private static Dict stringToDict(@Nullable String lemma, Locale locale, @Nullable String prependedLogMsg, ConversionDiagnostics diag) {
         checkNotNull(locale);
-        String sanitizedLemma = stringToString(lemma, prependedLogMsg);
+        String sanitizedLemma = stringToString(lemma, prependedLogMsg, diag);
         if (sanitizedLemma.isEmpty()) {
             return Dict.of();
         } else {
@@ -200,9 +661,10 @@ public final class NLTextConverter {
     public static List<String> lemmas(NLSenseMeaning meaning, Locale locale) {
         checkNotNull(meaning);
 
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
         List<String> ret = new ArrayList();
 
-        String lemma = stringToString(meaning.getLemma(), "Found invalid lemma in NLSenseMeaning");
+        String lemma = stringToString(meaning.getLemma(), "Found invalid lemma in NLSenseMeaning", diag);
         if (!lemma.isEmpty()) {
             ret.add(lemma);
         }
@@ -213,7 +675,7 @@ public final class NLTextConverter {
             if (synLemmas != null) {
                 for (String synLemma : synLemmas) {
                     if (synLemma == null) {
-                        LOG.warning("Found null synonym in NLMeaning!");
+                        diag.report(Issue.NULL_SYNONYM, "Found null synonym in NLMeaning!");
                     } else {
                         if (!synLemma.equals(lemma)) {
                             ret.add(synLemma);
@@ -223,6 +685,7 @@ public final class NLTextConverter {
             }
 
         }
+        logSummary(diag);
         return ret;
     }
 
@@ -237,9 +700,16 @@ public final class NLTextConverter {
      * {@link Locale#ROOT}.
      */
     public static Dict dictName(@Nullable NLSenseMeaning meaning, Locale locale) {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        Dict ret = dictName(meaning, locale, diag);
+        logSummary(diag);
+        return ret;
+    }
+
+    private static Dict dictName(@Nullable NLSenseMeaning meaning, Locale locale, ConversionDiagnostics diag) {
         try {
             if (meaning == null) {
-                LOG.warning("found null NLMeaning while extracting dict, returning empty Dict");
+                diag.report(Issue.INVALID_MEANING, "found null NLMeaning while extracting dict, returning empty Dict");
                 return Dict.of();
             }
 
@@ -247,42 +717,39 @@ public final class NLTextConverter {
 
             String lemma = meaning.getLemma();
             if (lemma == null) {
-                LOG.warning("found null lemma in NLMeaning while extracting dict");
+                diag.report(Issue.INVALID_LEMMA, "found null lemma in NLMeaning while extracting dict");
             } else {
                 if (lemma.isEmpty()) {
-                    LOG.warning("found empty lemma in NLMeaning while extracting dict");
+                    diag.report(Issue.INVALID_LEMMA, "found empty lemma in NLMeaning while extracting dict");
                 } else {
                     sanitizedLemmas.add(lemma);
                 }
             }
 
-            Object lemmasProp = meaning.getProp(NLTextUnit.PFX, "synonymousLemmas");
+            Object lemmasProp = meaning.getProp(NLTextUnit.PFX, SYNONYMOUS_LEMMAS);
             if (lemmasProp != null) {
-                List<String> synLemmas = (List<String>) meaning.getProp(NLTextUnit.PFX, "synonymousLemmas");
-
-                if (synLemmas != null) {
-                    for (String synLemma : synLemmas) {
-                        if (synLemma == null) {
-                            LOG.warning("Found null synonym in NLMeaing!");
-                        } else {
-                            if (!synLemma.equals(lemma)) {
-                                sanitizedLemmas.add(synLemma);
-                            }
+                List<String> synLemmas = (List<String>) lemmasProp;
+
+                for (String synLemma : synLemmas) {
+                    if (synLemma == null) {
+                        diag.report(Issue.NULL_SYNONYM, "Found null synonym in NLMeaning!");
+                    } else {
+                        if (!synLemma.equals(lemma)) {
+                            sanitizedLemmas.add(synLemma);
                         }
                     }
                 }
-
             }
 
             if (sanitizedLemmas.isEmpty()) {
-                LOG.warning("Found no valid lemmas to use, returning empty dict!");
+                diag.report(Issue.NO_VALID_LEMMAS, "Found no valid lemmas to use, returning empty dict!");
                 return Dict.of();
             } else {
                 return Dict.of(locale, sanitizedLemmas);
             }
         }
         catch (Exception ex) {
-            LOG.log(Level.SEVERE, "Error while creating Dict from NLMeaning, returning empty Dict", ex);
+            diag.report(Issue.INVALID_MEANING, "Error while creating Dict from NLMeaning, returning empty Dict", null, ex);
             return Dict.of();
         }
 
@@ -296,91 +763,208 @@ public final class NLTextConverter {
     }
 
     /**
-     * We support NLMultiTerm and NLNamedEntity
+     * Returns the complex token that should be preferred between
+     * {@code current} and {@code candidate}: longest one wins, on equal length
+     * one with selected meaning wins and named entities with selected meaning
+     * win over multiwords.
      */
-    private static List<NLComplexToken> getMultiTokens(NLToken token) {
-        List<NLComplexToken> ret = new ArrayList();
-
-        if (token.isUsedInMultiWord()) {
-            ret.addAll(token.getMultiWords());
+    private static NLComplexToken preferredMultiToken(@Nullable NLComplexToken current, NLComplexToken candidate) {
+        if (current == null) {
+            return candidate;
         }
-        if (token.isUsedInNamedEntity()) {
-            ret.addAll(token.getNamedEntities());
+
+        int candidateMultiTokenSize = candidate.getTokens().size();
+        int multiTokenSize = current.getTokens().size();
+
+        if (candidateMultiTokenSize > multiTokenSize) {
+            return candidate;
         }
-        return ret;
-    }
 
-    private static MeaningKind getKind(NLComplexToken tok) {
-        if (tok instanceof NLNamedEntity) {
-            return MeaningKind.ENTITY;
-        } else if (tok instanceof NLMultiWord) {
-            return MeaningKind.CONCEPT;
-        } else {
-            LOG.log(Level.WARNING, "Found token with unhandled class {0},  setting meaning kind to UNKNWON.", tok.getClass());
-            return MeaningKind.UNKNOWN;
+        if (candidateMultiTokenSize == multiTokenSize) {
+            if (current.getSelectedMeaning() == null) {
+                return candidate;
+            } else {
+                if (candidate instanceof NLNamedEntity
+                        && candidate.getSelectedMeaning() != null
+                        && current instanceof NLMultiWord) {
+                    return candidate;
+                }
+            }
         }
+        return current;
     }
 
     /**
-     * Returns true if {@code multiTokens} contain {@code token}
+     * Marks a missing offset in {@link SentenceIndex}
      */
-    private static boolean contain(List<NLComplexToken> multiTokens, NLComplexToken token) {
-        for (NLComplexToken tok : multiTokens) {
-            if (tok.getId() == token.getId()) {
-                return true;
-            }
+    private static final int NO_OFFSET = Integer.MIN_VALUE;
+
+    /**
+     * Offsets of the tokens of a sentence and their grouping into multiwords
+     * and named entities, see
+     * {@link #sentenceIndex(java.util.List, ConversionDiagnostics) sentenceIndex}
+     */
+    private static final class SentenceIndex {
+
+        /**
+         * For each token, its start offset within the sentence or
+         * {@link #NO_OFFSET}
+         */
+        private final int[] starts;
+
+        /**
+         * For each token, its end offset within the sentence or
+         * {@link #NO_OFFSET}
+         */
+        private final int[] ends;
+
+        /**
+         * For each token used in complex tokens, the complex token it should
+         * be grouped into. Null for other tokens.
+         */
+        private final NLComplexToken[] winners;
+
+        /**
+         * For each token with a winner, index of the last token of the
+         * contiguous run of tokens belonging to the winner.
+         */
+        private final int[] spanEnds;
+
+        private SentenceIndex(int size) {
+            this.starts = new int[size];
+            this.ends = new int[size];
+            this.winners = new NLComplexToken[size];
+            this.spanEnds = new int[size];
         }
-        return false;
     }
 
     /**
-     *
-     * @throws SemTextNotFoundException if the sentence start offset is missing
+     * Records that token at {@code tokIndex} belongs to {@code complexToken}.
+     * Runs are tracked as {first token index, last token index} and tokens
+     * must be visited from last to first.
      */
-    private static int sentenceStartOffset(NLToken token) {
-        Integer so = (Integer) token.getProp(NLTextUnit.PFX, SENTENCE_START_OFFSET);
-        if (so == null) {
-            throw new SemTextNotFoundException(SENTENCE_START_OFFSET + " is null in NLToken " + token);
+    private static void addToRun(Map<Long, int[]> runs, NLComplexToken complexToken, int tokIndex) {
+        Long id = Long.valueOf(complexToken.getId());
+        int[] run = runs.get(id);
+        if (run == null) {
+            runs.put(id, new int[]{tokIndex, tokIndex});
+        } else if (run[0] == tokIndex + 1) {
+            run[0] = tokIndex;
+        } else if (run[0] != tokIndex) {
+            run[0] = tokIndex;
+            run[1] = tokIndex;
         }
+    }
 
-        return so;
+    /**
+     * Returns the offset stored in {@code prop} of {@code token}, or
+     * {@link #NO_OFFSET} if missing.
+     */
+    private static int tokenOffset(NLToken token, String prop) {
+        Integer offset = (Integer) token.getProp(NLTextUnit.PFX, prop);
+        return offset == null ? NO_OFFSET : offset;
     }
 
     /**
-     *
-     * @throws SemTextNotFoundException if the sentence end offset is missing
+     * Computes in a single backward pass over {@code tokens} their offsets,
+     * the complex token each token should be grouped into and where the group
+     * ends.
      */
-    private static int sentenceEndOffset(NLToken token) {
-        Integer so = (Integer) token.getProp(NLTextUnit.PFX, SENTENCE_END_OFFSET);
-        if (so == null) {
-            throw new SemTextNotFoundException(SENTENCE_END_OFFSET + " is null in NLToken " + token);
+    private static SentenceIndex sentenceIndex(List<NLToken> tokens, ConversionDiagnostics diag) {
+        SentenceIndex ret = new SentenceIndex(tokens.size());
+        Map<Long, int[]> runs = new HashMap<Long, int[]>();
+
+        for (int i = tokens.size() - 1; i >= 0; i--) {
+            NLToken tok = tokens.get(i);
+            if (tok == null) {
+                ret.starts[i] = NO_OFFSET;
+                ret.ends[i] = NO_OFFSET;
+                continue;
+            }
+            try {
+                ret.starts[i] = tokenOffset(tok, SENTENCE_START_OFFSET);
+                ret.ends[i] = tokenOffset(tok, SENTENCE_END_OFFSET);
+
+                if (!isUsedInComplexToken(tok)) {
+                    continue;
+                }
+
+                NLComplexToken winner = null;
+                if (tok.isUsedInMultiWord() && tok.getMultiWords() != null) {
+                    for (NLComplexToken multiWord : tok.getMultiWords()) {
+                        addToRun(runs, multiWord, i);
+                        winner = preferredMultiToken(winner, multiWord);
+                    }
+                }
+                if (tok.isUsedInNamedEntity() && tok.getNamedEntities() != null) {
+                    for (NLComplexToken namedEntity : tok.getNamedEntities()) {
+                        addToRun(runs, namedEntity, i);
+                        winner = preferredMultiToken(winner, namedEntity);
+                    }
+                }
+
+                if (winner != null) {
+                    ret.winners[i] = winner;
+                    ret.spanEnds[i] = runs.get(Long.valueOf(winner.getId()))[1];
+                }
+            }
+            catch (Exception ex) {
+                diag.report(Issue.SKIPPED_TOKEN, "Error while indexing token at position {0}, it will be skipped.", i, ex);
+                ret.starts[i] = NO_OFFSET;
+                ret.ends[i] = NO_OFFSET;
+                ret.winners[i] = null;
+            }
         }
+        return ret;
+    }
 
-        return so;
+    private static MeaningKind getKind(NLComplexToken tok, ConversionDiagnostics diag) {
+        if (tok instanceof NLNamedEntity) {
+            return MeaningKind.ENTITY;
+        } else if (tok instanceof NLMultiWord) {
+            return MeaningKind.CONCEPT;
+        } else {
+            diag.report(Issue.UNSUPPORTED_TOKEN, "Found token with unhandled class {0},  setting meaning kind to UNKNWON.", tok.getClass(), null);
+            return MeaningKind.UNKNOWN;
+        }
     }
 
     /**
-     *
-     * @throws SemTextNotFoundException if the start offset is missing
+     * Receives the terms of a sentence, see
+     * {@link #sentenceTerms(java.util.List, int, TermSink, ConversionContext) sentenceTerms}
      */
-    private static int getStartOffset(NLSentence sentence) {
-        Integer so = (Integer) sentence.getProp(NLTextUnit.PFX, START_OFFSET);
-        if (so == null) {
-            throw new SemTextNotFoundException(START_OFFSET + " is null in NLSentence " + sentence);
-        }
-        return so;
+    private interface TermSink {
+
+        /**
+         * @param so the start offset of the token within the sentence
+         * @param eo the end offset of the token within the sentence
+         */
+        void token(NLToken nlToken, int sentenceStartOffset, int so, int eo, ConversionContext ctx);
+
+        /**
+         * @param startOffset the start offset of the complex token within the
+         * text
+         * @param endOffset the end offset of the complex token within the text
+         */
+        void complexToken(int startOffset, int endOffset, NLComplexToken multiThing, ConversionContext ctx);
     }
 
     /**
-     *
-     * @throws SemTextNotFoundException if the start offset is missing
+     * Collects SemText terms.
      */
-    private static int getEndOffset(NLSentence sentence) {
-        Integer so = (Integer) sentence.getProp(NLTextUnit.PFX, END_OFFSET);
-        if (so == null) {
-            throw new SemTextNotFoundException(END_OFFSET + " is null in NLSentence " + sentence);
+    private final class SemTextTerms implements TermSink {
+
+        private final List<Term> terms = new ArrayList<Term>();
+
+        @Override
+        public void token(NLToken nlToken, int sentenceStartOffset, int so, int eo, ConversionContext ctx) {
+            terms.add(semTextTerm(nlToken, sentenceStartOffset, so, eo, ctx));
+        }
+
+        @Override
+        public void complexToken(int startOffset, int endOffset, NLComplexToken multiThing, ConversionContext ctx) {
+            terms.add(semTextTerm(startOffset, endOffset, multiThing, ctx));
         }
-        return so;
     }
 
     /**
@@ -391,33 +975,48 @@ public final class NLTextConverter {
      *
      * Warning: conversion may be lossy.
      *
-     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)
-     * @param locale If unknown, use {@link Locale#ROOT}
+     * @param startOffset the start offset of the sentence
+     * @param endOffset the end offset of the sentence
+     * @param ctx the context of the NLText conversion
      *
      */
-    private Sentence semTextSentence(NLSentence sentence, Locale locale, boolean checkedByUser) {
+    private Sentence semTextSentence(NLSentence sentence, int startOffset, int endOffset, ConversionContext ctx) {
 
         if (sentence == null) {
             throw new IllegalArgumentException("Cannot convert a null sentence!");
         }
 
-        int startOffset;
-        int endOffset;
-        List<Term> terms = new ArrayList<Term>();
+        List<NLToken> tokens = sentence.getTokens();
+        if (tokens == null) {
+            ctx.diagnostics.report(Issue.SKIPPED_TOKEN, "Found NLSentence with null tokens, returning Sentence with no tokens");
+            return Sentence.of(startOffset, endOffset);
+        }
+
+        SemTextTerms terms = new SemTextTerms();
+        sentenceTerms(tokens, startOffset, terms, ctx);
+        return Sentence.of(startOffset, endOffset, terms.terms);
+    }
 
-        Integer so = getStartOffset(sentence);
-        Integer eo = getEndOffset(sentence);
+    /**
+     * Groups the tokens of a sentence into non-overlapping terms and passes
+     * them in order to {@code sink}. Multiwords and named entities become a
+     * single term and only terms for which startOffset and endOffset are
+     * defined are included.
+     *
+     * @param startOffset the start offset of the sentence
+     * @param ctx the context of the NLText conversion
+     */
+    private void sentenceTerms(List<NLToken> tokens,
+            int startOffset,
+            TermSink sink,
+            ConversionContext ctx) {
 
-        startOffset = so;
-        endOffset = eo;
+        boolean foundTerm = false;
+        int lastTermEnd = 0;
 
         int tokIndex = 0;
 
-        List<NLToken> tokens = sentence.getTokens();
-        if (tokens == null) {
-            LOG.warning("Found NLSentence with null tokens, returning Sentence with no tokens");
-            return Sentence.of(startOffset, endOffset);
-        }
+        SentenceIndex sentenceIndex = sentenceIndex(tokens, ctx.diagnostics);
 
         while (tokIndex < tokens.size()) {
             NLToken tok = null;
@@ -428,98 +1027,117 @@ public final class NLTextConverter {
             }
 
             if (tok == null) {
-                LOG.log(Level.WARNING, "Couldn''t find token at position {0}, skipping it.", tokIndex);
+                ctx.diagnostics.report(Issue.SKIPPED_TOKEN, "Couldn''t find token at position {0}, skipping it.", tokIndex, null);
                 tokIndex += 1;
                 continue;
             }
 
             try {
 
-                if (terms.size() > 0
-                        && Iterables.getLast(terms).getEnd() > sentenceStartOffset(tok) + startOffset) {
-                    tokIndex += 1;
-                    continue;
-                    
+                int tokStart = sentenceIndex.starts[tokIndex];
+
+                if (foundTerm) {
+                    if (tokStart == NO_OFFSET) {
+                        throw new SemTextNotFoundException(SENTENCE_START_OFFSET + " is null in NLToken " + tok);
+                    }
+                    if (lastTermEnd > tokStart + startOffset) {
+                        tokIndex += 1;
+                        continue;
+                    }
                 }
 
                 if (isUsedInComplexToken(tok)) {
-                    List<NLComplexToken> multiTokens = getMultiTokens(tok);
+                    NLComplexToken multiToken = sentenceIndex.winners[tokIndex];
 
-                    if (multiTokens.isEmpty()) {
+                    if (multiToken == null) {
                         throw new IllegalArgumentException("Token should be used in multitokens, but none found. ");
                     }
 
-                    NLComplexToken multiToken = null;
-
-                    for (NLComplexToken candidateMultiToken : multiTokens) {
-                        if (multiToken == null) {
-                            multiToken = candidateMultiToken;
-                        } else {
-                            int candidateMultiTokenSize = candidateMultiToken.getTokens().size();
-                            int multiTokenSize = multiToken.getTokens().size();
-
-                            if (candidateMultiTokenSize > multiTokenSize) {
-                                multiToken = candidateMultiToken;
-                            }
-
-                            if (candidateMultiTokenSize == multiTokenSize) {
-
-                                if (multiToken.getSelectedMeaning() == null) {
-                                    multiToken = candidateMultiToken;
-                                } else {
-                                    if (candidateMultiToken instanceof NLNamedEntity
-                                            && candidateMultiToken.getSelectedMeaning() != null
-                                            && multiToken instanceof NLMultiWord) {
-                                        multiToken = candidateMultiToken;
-                                    }
-                                }
-                            }
-                        }
-                    }
-
-                    int tokensSize = 1;
-                    for (int j = tokIndex + 1; j < sentence.getTokens().size(); j++) {
-                        NLToken q = sentence.getTokens().get(j);
-                        if (!(isUsedInComplexToken(q)
-                                && contain(getMultiTokens(q), multiToken))) {
-                            break;
-                        } else {
-                            tokensSize += 1;
-                        }
-                    }
+                    int tokensSize = sentenceIndex.spanEnds[tokIndex] - tokIndex + 1;
 
-                    Integer mtso = (Integer) tok.getProp(NLTextUnit.PFX, SENTENCE_START_OFFSET);
-                    Integer mteo = (Integer) sentence.getTokens().get(tokIndex + tokensSize - 1).getProp(NLTextUnit.PFX, SENTENCE_END_OFFSET);
+                    int mtso = tokStart;
+                    int mteo = sentenceIndex.ends[tokIndex + tokensSize - 1];
 
-                    if (mtso == null || mteo == null) {
+                    if (mtso == NO_OFFSET || mteo == NO_OFFSET) {
                         tokIndex += tokensSize;
                     } else {
-                        terms.add(semTextTerm(startOffset + mtso,
+                        sink.complexToken(startOffset + mtso,
                                 startOffset + mteo,
                                 multiToken,
-                                locale,
-                                checkedByUser));
+                                ctx);
+                        foundTerm = true;
+                        lastTermEnd = startOffset + mteo;
                         tokIndex += tokensSize;
                     }
 
                 } else { // not used in complex token
-                    if (tok.getProp(NLTextUnit.PFX, SENTENCE_START_OFFSET) != null
-                            && tok.getProp(NLTextUnit.PFX, SENTENCE_END_OFFSET) != null
+                    int tokEnd = sentenceIndex.ends[tokIndex];
+                    if (tokStart != NO_OFFSET
+                            && tokEnd != NO_OFFSET
                             && (tok.getSelectedMeaning() != null
                             || tok.getMeanings().size() > 0)) {
-                        terms.add(semTextTerm(tok, locale, startOffset, checkedByUser));
+                        sink.token(tok, startOffset, tokStart, tokEnd, ctx);
+                        foundTerm = true;
+                        lastTermEnd = startOffset + tokEnd;
                     }
                     tokIndex += 1;
                 }
             }
             catch (Exception ex) {
-                LOG.log(Level.WARNING, "Error while processing token at position " + tokIndex + " with text " + tok.getText() + ", skipping it.", ex);
+                ctx.diagnostics.report(Issue.SKIPPED_TOKEN, "Error while processing token at position {0}, skipping it.", tokIndex, ex);
                 tokIndex += 1;
             }
 
         }
+    }
+
+    /**
+     * Returns the locale of provided {@code nltext}, or {@link Locale#ROOT} if
+     * the language is missing.
+     */
+    private static Locale locale(NLText nltext, ConversionDiagnostics diag) {
+        return locale(nltext.getLanguage(), nltext.getText(), diag);
+    }
+
+    /**
+     * Returns the locale of provided {@code lang}uage tag, or
+     * {@link Locale#ROOT} if the language is missing.
+     *
+     * @param text the text of the nltext, only used for reporting
+     */
+    private static Locale locale(@Nullable String lang, @Nullable String text, ConversionDiagnostics diag) {
+        if (lang == null) {
+            diag.report(Issue.MISSING_LANGUAGE, "Found null language in nltext {0}, setting Locale.ROOT", text, null);
+            return Locale.ROOT;
+        } else {
+            return TodUtils.languageTagToLocale(lang);
+        }
+    }
+
+    /**
+     * Converts a single sentence of an NLText. Sentences without offsets or
+     * which fail conversion are skipped.
+     *
+     * @return the converted sentence, or null if it should be skipped.
+     */
+    @Nullable
+    private Sentence semTextSentenceOrSkip(@Nullable NLSentence nls, ConversionContext ctx) {
+        if (nls == null) {
+            ctx.diagnostics.report(Issue.SKIPPED_SENTENCE, "Found null NLSentence, skipping it.");
+            return null;
+        }
+        Integer so = (Integer) nls.getProp(NLTextUnit.PFX, START_OFFSET);
+        Integer eo = (Integer) nls.getProp(NLTextUnit.PFX, END_OFFSET);
 
-        return Sentence.of(startOffset, endOffset, terms);
+        if (so != null && eo != null) {
+            try {
+                return semTextSentence(nls, so, eo, ctx);
+            }
+            catch (Exception ex) {
+                ctx.diagnostics.report(Issue.SKIPPED_SENTENCE, "Error while converting NLSentence, skipping it.", null, ex);
+            }
+        }
+        return null;
     }
 
     /**
@@ -537,57 +1155,1344 @@ public final class NLTextConverter {
      * meaning statuses will be either {@link MeaningStatus#SELECTED SELECTED}
      * or {@link MeaningStatus#TO_DISAMBIGUATE TO_DISAMBIGUATE}.
      *
+     * @see #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean,
+     * eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics)
      */
     public SemText semText(@Nullable NLText nltext, boolean checkedByUser) {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        SemText ret = semText(nltext, checkedByUser, diag);
+        logSummary(diag);
+        return ret;
+    }
+
+    /**
+     * Logs a single summary line of the issues found during a conversion.
+     */
+    static void logSummary(ConversionDiagnostics diag) {
+        if (diag.getTotalCount() > 0) {
+            LOG.log(Level.FINE, "Found issues during NLText conversion: {0}", diag);
+        }
+    }
+
+    /**
+     * Same as {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * but problems found during conversion are reported to {@code diagnostics}
+     * instead of being logged.
+     *
+     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     */
+    public SemText semText(@Nullable NLText nltext, boolean checkedByUser, ConversionDiagnostics diagnostics) {
+        checkNotNull(diagnostics);
 
         if (nltext == null) {
-            LOG.warning("Found null NLText while converting to SemText, returning empty semtext");
+            diagnostics.report(Issue.SKIPPED_DOCUMENT, "Found null NLText while converting to SemText, returning empty semtext");
             return SemText.of();
         }
 
-        Locale locale;
-        String lang = nltext.getLanguage();
-        if (lang == null) {
-            LOG.log(Level.WARNING, "Found null language in nltext {0}, setting Locale.ROOT", nltext.getText());
-            locale = Locale.ROOT;
-        } else {
-            locale = TodUtils.languageTagToLocale(lang);
-        }
+        Locale locale = locale(nltext, diagnostics);
+        ConversionContext ctx = new ConversionContext(locale, checkedByUser, diagnostics);
 
         List<Sentence> sentences = new ArrayList<Sentence>();
 
         List<NLSentence> nlSentences = nltext.getSentences();
         if (nlSentences != null) {
             for (NLSentence nls : nlSentences) {
-                Integer so = (Integer) nls.getProp(NLTextUnit.PFX, "startOffset");
-                Integer eo = (Integer) nls.getProp(NLTextUnit.PFX, "endOffset");
-
-                if (so != null && eo != null) {
-                    try {
-                        Sentence s = semTextSentence(nls, locale, checkedByUser);
-                        sentences.add(s);
-                    }
-                    catch (Exception ex) {
-                        LOG.log(Level.WARNING, "Error while converting NLSentence, skipping it.", ex);
-                    }
-                }
+                addSentence(nls, sentences, ctx);
             }
         }
 
         return SemText.ofSentences(locale, nltext.getText(), sentences);
     }
 
-    private List<String> stringsToStrings(@Nullable Iterable<String> strings, @Nullable String prependedLogMsg) {
-        if (strings == null) {
-            LOG.log(Level.WARNING, "{0} -- Found null strings", prependedLogMsg);
-            return new ArrayList();
-        }
-
-        List<String> ret = new ArrayList();
-        for (String string : strings) {
-            if (string == null) {
-                LOG.log(Level.WARNING,
-                        "{0} -- Found null string, skipping it", prependedLogMsg);
+    /**
+     * Converts {@code nltext} reusing the sentences of a previous conversion.
+     * Meant for documents which are edited and analyzed again, where most
+     * sentences don't change: each sentence of {@code nltext} whose
+     * {@link #fingerprint(it.unitn.disi.sweb.core.nlp.model.NLSentence) fingerprint}
+     * and offsets match the ones of a sentence of {@code previousNLText} takes
+     * the corresponding {@link Sentence} of {@code previousSemText} as is,
+     * while the others are converted as in
+     * {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean) semText}.
+     * <br/>
+     * <br/>
+     * {@code previousSemText} must have been obtained from
+     * {@code previousNLText} with this converter and the same
+     * {@code checkedByUser}, otherwise returned SemText may differ from the one
+     * a full conversion would give. If the language of the document changed
+     * nothing is reused. Note sentences moved by an edit of the text before
+     * them have different offsets and are converted again.
+     *
+     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * @param previousNLText the NLText {@code previousSemText} was converted
+     * from. If null, {@code nltext} is entirely converted.
+     * @param previousSemText the result of the previous conversion
+     */
+    public SemText semText(@Nullable NLText nltext,
+            boolean checkedByUser,
+            @Nullable NLText previousNLText,
+            SemText previousSemText) {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        SemText ret = semText(nltext, checkedByUser, previousNLText, previousSemText, diag);
+        logSummary(diag);
+        return ret;
+    }
+
+    /**
+     * Same as
+     * {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean, it.unitn.disi.sweb.core.nlp.model.NLText, eu.trentorise.opendata.semtext.SemText)}
+     * but problems found while converting changed sentences are reported to
+     * {@code diagnostics} instead of being logged.
+     */
+    public SemText semText(@Nullable NLText nltext,
+            boolean checkedByUser,
+            @Nullable NLText previousNLText,
+            SemText previousSemText,
+            ConversionDiagnostics diagnostics) {
+        checkNotNull(previousSemText);
+        checkNotNull(diagnostics);
+
+        if (nltext == null) {
+            diagnostics.report(Issue.SKIPPED_DOCUMENT, "Found null NLText while converting to SemText, returning empty semtext");
+            return SemText.of();
+        }
+
+        Locale locale = locale(nltext, diagnostics);
+        ConversionContext ctx = new ConversionContext(locale, checkedByUser, diagnostics);
+
+        Map<SentenceKey, Sentence> reusable = new HashMap<SentenceKey, Sentence>();
+        if (previousNLText != null
+                && previousNLText.getSentences() != null
+                && locale.equals(previousSemText.getLocale())) {
+            Map<Long, Sentence> byOffsets = new HashMap<Long, Sentence>();
+            for (Sentence s : previousSemText.getSentences()) {
+                byOffsets.put(offsetsKey(s.getStart(), s.getEnd()), s);
+            }
+            for (NLSentence nls : previousNLText.getSentences()) {
+                SentenceKey key = sentenceKeyOrNull(nls);
+                if (key != null) {
+                    Sentence s = byOffsets.get(offsetsKey(key.startOffset, key.endOffset));
+                    if (s != null) {
+                        reusable.put(key, s);
+                    }
+                }
+            }
+        }
+
+        List<Sentence> sentences = new ArrayList<Sentence>();
+
+        List<NLSentence> nlSentences = nltext.getSentences();
+        if (nlSentences != null) {
+            for (NLSentence nls : nlSentences) {
+                SentenceKey key = sentenceKeyOrNull(nls);
+                Sentence s = key == null ? null : reusable.get(key);
+                if (s == null) {
+                    addSentence(nls, sentences, ctx);
+                } else {
+                    sentences.add(s);
+                }
+            }
+        }
+
+        return SemText.ofSentences(locale, nltext.getText(), sentences);
+    }
+
+    private static final long FINGERPRINT_SEED = 0xCBF29CE484222325L;
+
+    private static long offsetsKey(int startOffset, int endOffset) {
+        return ((long) startOffset << 32) | (endOffset & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Identifies a sentence which can be reused by its offsets and its
+     * {@link #fingerprint(it.unitn.disi.sweb.core.nlp.model.NLSentence) fingerprint},
+     * so a fingerprint collision alone can't pick a sentence at different
+     * offsets.
+     */
+    private static final class SentenceKey {
+
+        private final int startOffset;
+        private final int endOffset;
+        private final long fingerprint;
+
+        private SentenceKey(int startOffset, int endOffset, long fingerprint) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 53 * hash + this.startOffset;
+            hash = 53 * hash + this.endOffset;
+            hash = 53 * hash + (int) (this.fingerprint ^ (this.fingerprint >>> 32));
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final SentenceKey other = (SentenceKey) obj;
+            if (this.startOffset != other.startOffset) {
+                return false;
+            }
+            if (this.endOffset != other.endOffset) {
+                return false;
+            }
+            if (this.fingerprint != other.fingerprint) {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns the reuse key of {@code nls}, or null if it has no offsets or
+     * its fingerprint can't be computed.
+     */
+    @Nullable
+    private static SentenceKey sentenceKeyOrNull(@Nullable NLSentence nls) {
+        if (nls == null) {
+            return null;
+        }
+        Integer so = (Integer) nls.getProp(NLTextUnit.PFX, START_OFFSET);
+        Integer eo = (Integer) nls.getProp(NLTextUnit.PFX, END_OFFSET);
+        if (so == null || eo == null) {
+            return null;
+        }
+        try {
+            return new SentenceKey(so, eo, fingerprint(nls));
+        }
+        catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a 64 bit hash of what sentence conversion depends on: sentence
+     * and token offsets, token texts, stems and derived lemmas, meaning ids,
+     * lemmas, summaries and probabilities, concept synonymous lemmas and
+     * glosses, entity descriptions, selected meanings and multiwords and
+     * named entities tokens belong to, including which tokens they span.
+     */
+    private static long fingerprint(NLSentence nls) {
+        long h = FINGERPRINT_SEED;
+        h = mix(h, (Integer) nls.getProp(NLTextUnit.PFX, START_OFFSET));
+        h = mix(h, (Integer) nls.getProp(NLTextUnit.PFX, END_OFFSET));
+
+        List<NLToken> tokens = nls.getTokens();
+        if (tokens == null) {
+            return mix(h, -1);
+        }
+        h = mix(h, tokens.size());
+        Map<NLToken, Integer> tokenIndexes = new IdentityHashMap<NLToken, Integer>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            tokenIndexes.put(tokens.get(i), i);
+        }
+        for (NLToken tok : tokens) {
+            if (tok == null) {
+                h = mix(h, -1);
+                continue;
+            }
+            h = mix(h, tokenOffset(tok, SENTENCE_START_OFFSET));
+            h = mix(h, tokenOffset(tok, SENTENCE_END_OFFSET));
+            h = mix(h, tok.getText());
+            h = mix(h, tok.getDerivedStem());
+            Iterable<String> derivedLemmas = tok.getDerivedLemmas();
+            if (derivedLemmas == null) {
+                h = mix(h, -1);
+            } else {
+                for (String lemma : derivedLemmas) {
+                    h = mix(h, lemma);
+                }
+            }
+            h = mix(h, meaningsFingerprint(tok.getMeanings()));
+            h = mix(h, meaningFingerprint(tok.getSelectedMeaning()));
+
+            h = mix(h, tok.isUsedInMultiWord() ? 1 : 0);
+            if (tok.isUsedInMultiWord() && tok.getMultiWords() != null) {
+                h = mix(h, complexTokensFingerprint(tok.getMultiWords(), tokenIndexes));
+            }
+            h = mix(h, tok.isUsedInNamedEntity() ? 1 : 0);
+            if (tok.isUsedInNamedEntity() && tok.getNamedEntities() != null) {
+                h = mix(h, complexTokensFingerprint(tok.getNamedEntities(), tokenIndexes));
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns a hash of provided complex tokens which doesn't depend on their
+     * order.
+     *
+     * @param tokenIndexes the positions of the sentence tokens, so the hash
+     * tells which tokens each complex token spans
+     */
+    private static long complexTokensFingerprint(Collection<? extends NLComplexToken> complexTokens,
+            Map<NLToken, Integer> tokenIndexes) {
+        long ret = 0;
+        for (NLComplexToken ct : complexTokens) {
+            if (ct == null) {
+                ret += FINGERPRINT_SEED;
+                continue;
+            }
+            long h = mix(FINGERPRINT_SEED, ct.getClass().getName());
+            List<NLToken> ctTokens = ct.getTokens();
+            if (ctTokens == null) {
+                h = mix(h, -1);
+            } else {
+                h = mix(h, ctTokens.size());
+                for (NLToken ctToken : ctTokens) {
+                    Integer index = tokenIndexes.get(ctToken);
+                    h = mix(h, index == null ? -1 : index);
+                }
+            }
+            Iterable<String> derivedLemmas = ct.getDerivedLemmas();
+            if (derivedLemmas == null) {
+                h = mix(h, -1);
+            } else {
+                for (String lemma : derivedLemmas) {
+                    h = mix(h, lemma);
+                }
+            }
+            h = mix(h, meaningsFingerprint(ct.getMeanings()));
+            h = mix(h, meaningFingerprint(ct.getSelectedMeaning()));
+            ret += h;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a hash of provided meanings which doesn't depend on their order.
+     */
+    private static long meaningsFingerprint(@Nullable Collection<? extends NLMeaning> meanings) {
+        if (meanings == null) {
+            return -1;
+        }
+        long ret = meanings.size();
+        for (NLMeaning m : meanings) {
+            ret += meaningFingerprint(m);
+        }
+        return ret;
+    }
+
+    private static long meaningFingerprint(@Nullable NLMeaning m) {
+        if (m == null) {
+            return 0;
+        }
+        long h = mix(FINGERPRINT_SEED, m.getClass().getName());
+        Long id = nlMeaningId(m);
+        h = mix(h, id == null ? UrlMapper.INVALID_ID : id);
+        h = mix(h, Double.doubleToLongBits(m.getProbability()));
+        h = mix(h, m.getLemma());
+        h = mix(h, m.getSummary());
+        if (m instanceof NLSenseMeaning) {
+            // name and description of converted concepts
+            Object synonyms = m.getProp(NLTextUnit.PFX, SYNONYMOUS_LEMMAS);
+            if (synonyms instanceof List) {
+                for (Object synonym : (List<?>) synonyms) {
+                    h = mix(h, synonym == null ? null : synonym.toString());
+                }
+            } else {
+                h = mix(h, synonyms == null ? null : synonyms.getClass().getName());
+            }
+            Object glosses = m.getProp(NLTextUnit.PFX, GLOSS_MAP);
+            if (glosses instanceof Map) {
+                long glossesHash = 0;
+                for (Map.Entry<?, ?> gloss : ((Map<?, ?>) glosses).entrySet()) {
+                    long gh = mix(FINGERPRINT_SEED, gloss.getKey() == null ? null : gloss.getKey().toString());
+                    glossesHash += mix(gh, gloss.getValue() == null ? null : gloss.getValue().toString());
+                }
+                h = mix(h, glossesHash);
+            } else {
+                h = mix(h, glosses == null ? null : glosses.getClass().getName());
+            }
+        } else if (m instanceof NLEntityMeaning) {
+            // description of converted entities
+            h = mix(h, ((NLEntityMeaning) m).getDescription());
+        }
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        h = (h ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static long mix(long h, @Nullable String s) {
+        if (s == null) {
+            return mix(h, -1);
+        }
+        h = mix(h, s.length());
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /**
+     * Returns a view of the sentences {@code nltext} would be converted to by
+     * {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean) semText},
+     * where each sentence is converted the first time it is accessed and then
+     * remembered. Sentences which are never accessed are never converted.
+     * <br/>
+     * <br/>
+     * Unlike semText, sentences which fail conversion are not removed but
+     * returned with no terms, so the size of the list is known in advance:
+     * it is the number of sentences with offsets. To know it, building the
+     * view reads the offsets of all the NLSentences, so it takes time linear
+     * in the number of sentences, though no token is read until a sentence is
+     * accessed. The returned list is unmodifiable and safe to use from
+     * multiple threads. {@code nltext} should not be changed while the list
+     * is in use. <br/>
+     * <br/>
+     * As the list has no end of conversion to summarize them at, problems
+     * found are only collected and never logged: to inspect them use
+     * {@link #lazySentences(it.unitn.disi.sweb.core.nlp.model.NLText, boolean, eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics)}.
+     *
+     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * @see #lazySentences(it.unitn.disi.sweb.core.nlp.model.NLText, boolean,
+     * eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics)
+     */
+    public List<Sentence> lazySentences(@Nullable NLText nltext, boolean checkedByUser) {
+        return lazySentences(nltext, checkedByUser, ConversionDiagnostics.of(0, 0));
+    }
+
+    /**
+     * Same as {@link #lazySentences(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * but problems found during conversion are reported to
+     * {@code diagnostics} as sentences get converted.
+     */
+    public List<Sentence> lazySentences(@Nullable NLText nltext, boolean checkedByUser, ConversionDiagnostics diagnostics) {
+        checkNotNull(diagnostics);
+
+        if (nltext == null) {
+            diagnostics.report(Issue.SKIPPED_DOCUMENT, "Found null NLText while converting to SemText, returning no sentences");
+            return Collections.emptyList();
+        }
+
+        List<NLSentence> sentences = new ArrayList<NLSentence>();
+        List<NLSentence> nlSentences = nltext.getSentences();
+        if (nlSentences != null) {
+            for (NLSentence nls : nlSentences) {
+                if (nls != null
+                        && nls.getProp(NLTextUnit.PFX, START_OFFSET) != null
+                        && nls.getProp(NLTextUnit.PFX, END_OFFSET) != null) {
+                    sentences.add(nls);
+                }
+            }
+        }
+
+        return new LazySentences(sentences,
+                new ConversionContext(locale(nltext, diagnostics), checkedByUser, diagnostics));
+    }
+
+    /**
+     * Sentences converted on first access, see
+     * {@link #lazySentences(it.unitn.disi.sweb.core.nlp.model.NLText, boolean) lazySentences}
+     */
+    private final class LazySentences extends AbstractList<Sentence> implements RandomAccess {
+
+        private final List<NLSentence> nlSentences;
+        private final ConversionContext ctx;
+        private final AtomicReferenceArray<Sentence> sentences;
+
+        private LazySentences(List<NLSentence> nlSentences, ConversionContext ctx) {
+            this.nlSentences = nlSentences;
+            this.ctx = ctx;
+            this.sentences = new AtomicReferenceArray<Sentence>(nlSentences.size());
+        }
+
+        @Override
+        public Sentence get(int index) {
+            Sentence ret = sentences.get(index);
+            if (ret != null) {
+                return ret;
+            }
+
+            // concurrent first accesses may both convert, the first stored wins
+            NLSentence nls = nlSentences.get(index);
+            Sentence sentence = semTextSentenceOrSkip(nls, ctx);
+            if (sentence == null) {
+                sentence = Sentence.of((Integer) nls.getProp(NLTextUnit.PFX, START_OFFSET),
+                        (Integer) nls.getProp(NLTextUnit.PFX, END_OFFSET));
+            }
+            if (sentences.compareAndSet(index, null, sentence)) {
+                return sentence;
+            } else {
+                return sentences.get(index);
+            }
+        }
+
+        @Override
+        public int size() {
+            return nlSentences.size();
+        }
+    }
+
+    /**
+     * Starts the conversion of an NLText whose sentences are provided one at
+     * a time, as done by {@link NLTextJsonStreamConverter}.
+     *
+     * @param language the language tag of the NLText, if known
+     * @param text the text of the NLText, only used for reporting
+     */
+    StreamingConversion streamingConversion(@Nullable String language,
+            @Nullable String text,
+            boolean checkedByUser,
+            ConversionDiagnostics diagnostics) {
+        return new StreamingConversion(
+                new ConversionContext(locale(language, text, diagnostics), checkedByUser, diagnostics));
+    }
+
+    /**
+     * Conversion of an NLText fed one sentence at a time. Only converted
+     * sentences are kept.
+     */
+    final class StreamingConversion {
+
+        private final ConversionContext ctx;
+        private final List<Sentence> sentences;
+
+        private StreamingConversion(ConversionContext ctx) {
+            this.ctx = ctx;
+            this.sentences = new ArrayList<Sentence>();
+        }
+
+        /**
+         * Converts {@code nls} and keeps the result, unless the sentence
+         * should be skipped.
+         */
+        void add(@Nullable NLSentence nls) {
+            addSentence(nls, sentences, ctx);
+        }
+
+        /**
+         * Returns the SemText made with provided {@code text} and the
+         * sentences converted so far.
+         */
+        SemText finish(@Nullable String text) {
+            return SemText.ofSentences(ctx.locale, text, sentences);
+        }
+    }
+
+    /**
+     * Converts {@code nls} and adds it to {@code sentences}, unless it should
+     * be skipped.
+     */
+    private void addSentence(@Nullable NLSentence nls, List<Sentence> sentences, ConversionContext ctx) {
+        Sentence s = semTextSentenceOrSkip(nls, ctx);
+        if (s != null) {
+            sentences.add(s);
+        }
+    }
+
+    /**
+     * Same as {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * but sentences are converted concurrently on the provided
+     * {@code executor}. Sentence order is preserved and sentences that fail
+     * conversion are skipped as in the sequential version. <br/>
+     * <br/>
+     * Sentences are split in about as many contiguous chunks as available
+     * processors. The first chunk is converted in the calling thread, which
+     * then also converts any chunk the executor didn't start yet or rejected,
+     * so the method never waits on work queued behind it and can safely be
+     * called from a thread of {@code executor} itself.
+     *
+     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * @param executor the executor that will run sentence conversions, i.e. a
+     * {@link java.util.concurrent.ThreadPoolExecutor ThreadPoolExecutor}
+     */
+    public SemText semText(@Nullable NLText nltext, boolean checkedByUser, Executor executor) {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        SemText ret = semText(nltext, checkedByUser, executor, diag);
+        logSummary(diag);
+        return ret;
+    }
+
+    /**
+     * Same as {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean, java.util.concurrent.Executor)}
+     * but problems found during conversion are reported to {@code diagnostics}
+     * instead of being logged.
+     */
+    public SemText semText(@Nullable NLText nltext,
+            boolean checkedByUser,
+            Executor executor,
+            ConversionDiagnostics diagnostics) {
+        checkNotNull(executor);
+        checkNotNull(diagnostics);
+
+        if (nltext == null) {
+            diagnostics.report(Issue.SKIPPED_DOCUMENT, "Found null NLText while converting to SemText, returning empty semtext");
+            return SemText.of();
+        }
+
+        Locale locale = locale(nltext, diagnostics);
+        final ConversionContext ctx = new ConversionContext(locale, checkedByUser, diagnostics);
+
+        List<NLSentence> nlSentences = nltext.getSentences();
+        if (nlSentences == null || nlSentences.isEmpty()) {
+            return SemText.ofSentences(locale, nltext.getText(), new ArrayList<Sentence>());
+        }
+
+        int chunks = Math.min(nlSentences.size(), Runtime.getRuntime().availableProcessors());
+        List<FutureTask<List<Sentence>>> tasks = new ArrayList<FutureTask<List<Sentence>>>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final List<NLSentence> chunk = nlSentences.subList(
+                    i * nlSentences.size() / chunks,
+                    (i + 1) * nlSentences.size() / chunks);
+            tasks.add(new FutureTask<List<Sentence>>(new Callable<List<Sentence>>() {
+                @Override
+                public List<Sentence> call() {
+                    List<Sentence> ret = new ArrayList<Sentence>(chunk.size());
+                    for (NLSentence nls : chunk) {
+                        addSentence(nls, ret, ctx);
+                    }
+                    return ret;
+                }
+            }));
+        }
+
+        for (int i = 1; i < chunks; i++) {
+            try {
+                executor.execute(tasks.get(i));
+            }
+            catch (RejectedExecutionException ex) {
+                // will be run by the calling thread
+            }
+        }
+
+        List<Sentence> sentences = new ArrayList<Sentence>(nlSentences.size());
+        for (FutureTask<List<Sentence>> task : tasks) {
+            // does nothing if the executor already started the task
+            task.run();
+            try {
+                sentences.addAll(Uninterruptibles.getUninterruptibly(task));
+            }
+            catch (ExecutionException ex) {
+                diagnostics.report(Issue.SKIPPED_SENTENCE, "Error while converting chunk of NLSentences, skipping it.", null, ex.getCause());
+            }
+        }
+
+        return SemText.ofSentences(locale, nltext.getText(), sentences);
+    }
+
+    /**
+     * Converts many {@code nltexts} concurrently on the provided
+     * {@code executor}, keeping at most
+     * {@code 2 * Runtime.getRuntime().availableProcessors()} documents in
+     * flight. See
+     * {@link #semTexts(java.lang.Iterable, boolean, java.util.concurrent.Executor, int)}
+     */
+    public List<SemText> semTexts(Iterable<NLText> nltexts, boolean checkedByUser, Executor executor) {
+        return semTexts(nltexts, checkedByUser, executor, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Converts many {@code nltexts} concurrently on the provided
+     * {@code executor}. Documents are read from {@code nltexts} only when
+     * there are less than {@code maxInFlight} conversions pending, so lazy
+     * iterables are not entirely loaded in memory. <br/>
+     * <br/>
+     * Returned list has the same order of {@code nltexts}. If the conversion
+     * of a document fails, an empty SemText is put in its place and a
+     * {@link Issue#SKIPPED_DOCUMENT SKIPPED_DOCUMENT} issue is counted in the
+     * summary logged at the end of the batch. If the executor rejects a
+     * document, it is converted in the calling thread. While waiting for a
+     * document the calling thread converts it itself if no thread of the
+     * executor has started it yet, so it is safe to call this method from a
+     * thread of {@code executor}.
+     *
+     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * @param maxInFlight the maximum number of documents submitted to the
+     * executor and not yet collected. Must be greater than zero.
+     */
+    public List<SemText> semTexts(Iterable<NLText> nltexts,
+            boolean checkedByUser,
+            Executor executor,
+            int maxInFlight) {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        List<SemText> ret = semTexts(nltexts, checkedByUser, executor, maxInFlight, diag);
+        logSummary(diag);
+        return ret;
+    }
+
+    /**
+     * Same as {@link #semTexts(java.lang.Iterable, boolean, java.util.concurrent.Executor, int)}
+     * but problems found during conversion of all documents are reported to
+     * {@code diagnostics} instead of being logged.
+     */
+    public List<SemText> semTexts(Iterable<NLText> nltexts,
+            final boolean checkedByUser,
+            Executor executor,
+            int maxInFlight,
+            final ConversionDiagnostics diagnostics) {
+        checkNotNull(nltexts);
+        checkNotNull(executor);
+        checkArgument(maxInFlight > 0, "maxInFlight must be greater than zero! Found instead %s", maxInFlight);
+        checkNotNull(diagnostics);
+
+        List<SemText> ret = new ArrayList<SemText>();
+        Deque<FutureTask<SemText>> pending = new ArrayDeque<FutureTask<SemText>>();
+
+        for (final NLText nltext : nltexts) {
+            if (pending.size() >= maxInFlight) {
+                ret.add(collectSemText(pending.removeFirst(), diagnostics));
+            }
+            FutureTask<SemText> task = new FutureTask<SemText>(new Callable<SemText>() {
+                @Override
+                public SemText call() {
+                    try {
+                        return semText(nltext, checkedByUser, diagnostics);
+                    }
+                    catch (Exception ex) {
+                        diagnostics.report(Issue.SKIPPED_DOCUMENT, "Error while converting NLText, returning empty SemText in its place.", null, ex);
+                        return SemText.of();
+                    }
+                }
+            });
+            pending.addLast(task);
+            try {
+                executor.execute(task);
+            }
+            catch (RejectedExecutionException ex) {
+                task.run();
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            ret.add(collectSemText(pending.removeFirst(), diagnostics));
+        }
+        return ret;
+    }
+
+    /**
+     * Runs the document conversion in the calling thread if the executor
+     * didn't start it yet, otherwise waits for its result. On error reports
+     * an issue and returns an empty SemText.
+     */
+    private static SemText collectSemText(FutureTask<SemText> task, ConversionDiagnostics diag) {
+        // does nothing if the executor already started the task
+        task.run();
+        try {
+            return Uninterruptibles.getUninterruptibly(task);
+        }
+        catch (ExecutionException ex) {
+            diag.report(Issue.SKIPPED_DOCUMENT, "Error while converting NLText, returning empty SemText in its place.", null, ex.getCause());
+            return SemText.of();
+        }
+    }
+
+    /**
+     * Converts provided {@code nltext} straight into a semantic string, giving
+     * the same complex concepts, concept terms, instance terms and string
+     * terms as
+     * {@link SemanticStringConverter#semanticString(eu.trentorise.opendata.semtext.SemText) SemanticStringConverter.semanticString}
+     * applied to the output of
+     * {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean) semText},
+     * without building meanings, names, descriptions and metadata in between.
+     * Meanings with the same kind, id and probability in a term give a single
+     * concept or instance term. <br/>
+     * <br/>
+     * Warning: conversion may be lossy.
+     *
+     * @see #semanticString(it.unitn.disi.sweb.core.nlp.model.NLText,
+     * eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics)
+     */
+    public SemanticString semanticString(@Nullable NLText nltext) {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        SemanticString ret = semanticString(nltext, diag);
+        logSummary(diag);
+        return ret;
+    }
+
+    /**
+     * Same as {@link #semanticString(it.unitn.disi.sweb.core.nlp.model.NLText)}
+     * but problems found during conversion are reported to {@code diagnostics}
+     * instead of being logged.
+     */
+    public SemanticString semanticString(@Nullable NLText nltext, ConversionDiagnostics diagnostics) {
+        checkNotNull(diagnostics);
+
+        List<ComplexConcept> complexConcepts = new ArrayList<ComplexConcept>();
+
+        if (nltext == null) {
+            diagnostics.report(Issue.SKIPPED_DOCUMENT, "Found null NLText while converting to SemanticString, returning empty SemanticString");
+            return new SemanticString("", complexConcepts);
+        }
+
+        String text = nltext.getText();
+        if (text == null) {
+            diagnostics.report(Issue.SKIPPED_DOCUMENT, "Found NLText with null text while converting to SemanticString, returning empty SemanticString");
+            return new SemanticString("", complexConcepts);
+        }
+
+        ConversionContext ctx = new ConversionContext(locale(nltext, diagnostics), false, diagnostics);
+        SemanticTerms sink = new SemanticTerms(text, complexConcepts);
+
+        List<NLSentence> nlSentences = nltext.getSentences();
+        if (nlSentences != null) {
+            for (NLSentence nls : nlSentences) {
+                int size = complexConcepts.size();
+                try {
+                    Integer so = (Integer) nls.getProp(NLTextUnit.PFX, START_OFFSET);
+                    Integer eo = (Integer) nls.getProp(NLTextUnit.PFX, END_OFFSET);
+                    if (so == null || eo == null) {
+                        continue;
+                    }
+                    List<NLToken> tokens = nls.getTokens();
+                    if (tokens == null) {
+                        diagnostics.report(Issue.SKIPPED_TOKEN, "Found NLSentence with null tokens, skipping it");
+                    } else {
+                        sentenceTerms(tokens, so, sink, ctx);
+                    }
+                }
+                catch (Exception ex) {
+                    complexConcepts.subList(size, complexConcepts.size()).clear();
+                    diagnostics.report(Issue.SKIPPED_SENTENCE, "Error while converting NLSentence, skipping it.", null, ex);
+                }
+            }
+        }
+
+        return new SemanticString(text, complexConcepts);
+    }
+
+    /**
+     * Collects SemanticString complex concepts holding one semantic term each,
+     * like SemanticStringConverter does for the terms collected by
+     * {@link SemTextTerms}.
+     */
+    private final class SemanticTerms implements TermSink {
+
+        private final String text;
+        private final List<ComplexConcept> complexConcepts;
+
+        private SemanticTerms(String text, List<ComplexConcept> complexConcepts) {
+            this.text = text;
+            this.complexConcepts = complexConcepts;
+        }
+
+        @Override
+        public void token(NLToken nlToken, int sentenceStartOffset, int so, int eo, ConversionContext ctx) {
+            checkNotNull(nlToken);
+            checkArgument(sentenceStartOffset >= 0, "Sentence start offset can't be negative! Offset found: %s", sentenceStartOffset);
+
+            List<StringTerm> stringTerms = null;
+            if (metadataMode.hasTermMetadata()) {
+                String sanitizedStem = stringToString(nlToken.getDerivedStem(), "Found invalid stem in NLToken!", ctx.diagnostics);
+                String sanitizedText = stringToString(nlToken.getText(), "Found invalid text in NLToken", ctx.diagnostics);
+                List<String> sanitizedDerivedLemmas = stringsToStrings(nlToken.getDerivedLemmas(), "Found invalid derived lemma in nltoken!", ctx.diagnostics);
+
+                stringTerms = new ArrayList<StringTerm>(sanitizedDerivedLemmas.size() + 2);
+                for (String derivedLemma : sanitizedDerivedLemmas) {
+                    SemanticStringConverter.addStringTerm(derivedLemma, stringTerms);
+                }
+                if (!sanitizedStem.isEmpty()) {
+                    SemanticStringConverter.addStringTerm(sanitizedStem, stringTerms);
+                }
+                if (!sanitizedText.isEmpty()) {
+                    SemanticStringConverter.addStringTerm(sanitizedText, stringTerms);
+                }
+            }
+
+            complexConcepts.add(complexConcept(sentenceStartOffset + so,
+                    sentenceStartOffset + eo,
+                    pruneMeanings(nlToken.getMeanings(), nlToken.getSelectedMeaning()),
+                    nlToken.getSelectedMeaning(),
+                    stringTerms,
+                    ctx));
+        }
+
+        @Override
+        public void complexToken(int startOffset, int endOffset, NLComplexToken multiThing, ConversionContext ctx) {
+            List<StringTerm> stringTerms = null;
+            if (metadataMode.hasTermMetadata()) {
+                List<String> sanitizedDerivedLemmas = stringsToStrings(multiThing.getDerivedLemmas(), "Found invalid derived lemma in NLComplexToken!", ctx.diagnostics);
+                stringTerms = new ArrayList<StringTerm>(sanitizedDerivedLemmas.size());
+                for (String derivedLemma : sanitizedDerivedLemmas) {
+                    SemanticStringConverter.addStringTerm(derivedLemma, stringTerms);
+                }
+            }
+
+            complexConcepts.add(complexConcept(startOffset,
+                    endOffset,
+                    pruneMeanings(multiThing.getMeanings(), multiThing.getSelectedMeaning()),
+                    multiThing.getSelectedMeaning(),
+                    stringTerms,
+                    ctx));
+        }
+
+        /**
+         * @param stringTerms if null, the term text will be the only string
+         * term
+         */
+        private ComplexConcept complexConcept(int startOffset,
+                int endOffset,
+                Collection<? extends NLMeaning> meanings,
+                @Nullable NLMeaning selected,
+                @Nullable List<StringTerm> stringTerms,
+                ConversionContext ctx) {
+
+            String termText = text.substring(startOffset, endOffset);
+
+            // meanings converted to an empty url are dropped by SemanticStringConverter
+            NLMeaning[] sorted = new NLMeaning[meanings.size()];
+            int conceptsCount = 0;
+            int entitiesCount = 0;
+            int n = 0;
+            for (NLMeaning m : meanings) {
+                if (m == null) {
+                    ctx.diagnostics.report(Issue.INVALID_MEANING, "Found null nlMeaning during conversion, skipping it");
+                } else {
+                    sorted[n++] = m;
+                    if (m instanceof NLEntityMeaning) {
+                        entitiesCount++;
+                    } else {
+                        conceptsCount++;
+                    }
+                }
+            }
+            // stable, so meanings of equal probability keep their order
+            Arrays.sort(sorted, 0, n, Collections.reverseOrder(PROBABILITY_ORDER));
+
+            long selectedId = selected == null ? UrlMapper.INVALID_ID : kbId(selected, ctx.diagnostics);
+            boolean selectedEntity = selected instanceof NLEntityMeaning;
+
+            List<ConceptTerm> concTerms = new ArrayList<ConceptTerm>(conceptsCount + (selectedEntity ? 0 : 1));
+            List<InstanceTerm> entityTerms = new ArrayList<InstanceTerm>(entitiesCount + (selectedEntity ? 1 : 0));
+
+            if (selectedId != UrlMapper.INVALID_ID) {
+                // super high prob so we're sure selected meaning gets the highest weight
+                addMeaningTerm(selectedEntity, selectedId, 5.0, concTerms, entityTerms);
+            }
+
+            for (int i = 0; i < n; i++) {
+                NLMeaning m = sorted[i];
+                long id = kbId(m, ctx.diagnostics);
+                boolean entity = m instanceof NLEntityMeaning;
+                if (id != UrlMapper.INVALID_ID
+                        && !(selectedId != UrlMapper.INVALID_ID && selectedEntity == entity && selectedId == id)) {
+                    addMeaningTerm(entity, id, m.getProbability(), concTerms, entityTerms);
+                }
+            }
+
+            if (stringTerms == null) {
+                stringTerms = new ArrayList<StringTerm>(1);
+                SemanticStringConverter.addStringTerm(termText, stringTerms);
+            }
+
+            SemanticTerm semTerm = new SemanticTerm();
+            semTerm.setOffset(startOffset);
+            semTerm.setText(termText);
+            semTerm.setConceptTerms(concTerms);
+            semTerm.setInstanceTerms(entityTerms);
+            semTerm.setStringTerms(stringTerms);
+
+            List<SemanticTerm> semTerms = new ArrayList<SemanticTerm>(1);
+            semTerms.add(semTerm);
+            return new ComplexConcept(semTerms);
+        }
+    }
+
+    /**
+     * Passes the sentences, terms and meanings {@code nltext} would be
+     * converted to by
+     * {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean) semText}
+     * to {@code visitor}, without building the SemText. Meanings of a term are
+     * passed by decreasing probability, once per kind, id and probability.
+     * The events of a sentence are only passed after the whole sentence has
+     * been converted, so sentences which fail conversion are skipped as in
+     * semText.
+     *
+     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * @see #visit(it.unitn.disi.sweb.core.nlp.model.NLText, boolean,
+     * eu.trentorise.opendata.semtext.nltext.NLTextVisitor,
+     * eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics)
+     */
+    public void visit(@Nullable NLText nltext, boolean checkedByUser, NLTextVisitor visitor) {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        visit(nltext, checkedByUser, visitor, diag);
+        logSummary(diag);
+    }
+
+    /**
+     * Same as {@link #visit(it.unitn.disi.sweb.core.nlp.model.NLText, boolean, eu.trentorise.opendata.semtext.nltext.NLTextVisitor)}
+     * but problems found during conversion are reported to {@code diagnostics}
+     * instead of being logged. Exceptions thrown by {@code visitor} are not
+     * reported and stop the visit.
+     */
+    public void visit(@Nullable NLText nltext,
+            boolean checkedByUser,
+            NLTextVisitor visitor,
+            ConversionDiagnostics diagnostics) {
+        checkNotNull(visitor);
+        checkNotNull(diagnostics);
+
+        if (nltext == null) {
+            diagnostics.report(Issue.SKIPPED_DOCUMENT, "Found null NLText while visiting it, nothing to visit");
+            return;
+        }
+
+        ConversionContext ctx = new ConversionContext(locale(nltext, diagnostics), checkedByUser, diagnostics);
+        VisitorEvents events = new VisitorEvents(visitor);
+
+        List<NLSentence> nlSentences = nltext.getSentences();
+        if (nlSentences == null) {
+            return;
+        }
+
+        for (NLSentence nls : nlSentences) {
+            try {
+                Integer so = (Integer) nls.getProp(NLTextUnit.PFX, START_OFFSET);
+                Integer eo = (Integer) nls.getProp(NLTextUnit.PFX, END_OFFSET);
+                if (so == null || eo == null) {
+                    continue;
+                }
+                events.sentence(so, eo);
+                List<NLToken> tokens = nls.getTokens();
+                if (tokens == null) {
+                    diagnostics.report(Issue.SKIPPED_TOKEN, "Found NLSentence with null tokens, visiting it with no terms");
+                } else {
+                    sentenceTerms(tokens, so, events, ctx);
+                }
+            }
+            catch (Exception ex) {
+                events.discard();
+                diagnostics.report(Issue.SKIPPED_SENTENCE, "Error while visiting NLSentence, skipping it.", null, ex);
+                continue;
+            }
+            // visitor is only called here, so its exceptions stop the visit
+            events.flush();
+        }
+    }
+
+    /**
+     * Turns terms into {@link NLTextVisitor} events, deciding meaning status
+     * and selected meaning like
+     * {@link #semTextTerm(it.unitn.disi.sweb.core.nlp.model.NLToken, int, int, int, ConversionContext) semTextTerm}
+     * does. Events of a sentence are kept until the whole sentence is
+     * converted and then {@link #flush() flushed} to the visitor, so
+     * sentences semText would drop are never visited. <br/>
+     * <br/>
+     * Events are held in primitive columns indexed by event position, reused
+     * for all the sentences of the document, so once the columns have grown
+     * to the size of the largest sentence no further allocation happens.
+     */
+    private final class VisitorEvents implements TermSink {
+
+        private final NLTextVisitor visitor;
+
+        /**
+         * Number of events of the current sentence
+         */
+        private int size;
+
+        /**
+         * For each event, true if it is a term, false if it is a meaning
+         */
+        private boolean[] terms;
+        /**
+         * Term start offsets, unused for meanings
+         */
+        private int[] startOffsets;
+        /**
+         * Term end offsets, unused for meanings
+         */
+        private int[] endOffsets;
+        /**
+         * Term {@link MeaningStatus} ordinals, unused for meanings
+         */
+        private byte[] statuses;
+        /**
+         * {@link MeaningKind} ordinals of the selected meaning for terms, of
+         * the meaning itself for meanings
+         */
+        private byte[] kinds;
+        private long[] ids;
+        private double[] probabilities;
+
+        /**
+         * Scratch space to sort the meanings of a term
+         */
+        private NLMeaning[] sorted;
+
+        private int sentenceStart;
+        private int sentenceEnd;
+
+        private VisitorEvents(NLTextVisitor visitor) {
+            this.visitor = visitor;
+            int capacity = 16;
+            this.terms = new boolean[capacity];
+            this.startOffsets = new int[capacity];
+            this.endOffsets = new int[capacity];
+            this.statuses = new byte[capacity];
+            this.kinds = new byte[capacity];
+            this.ids = new long[capacity];
+            this.probabilities = new double[capacity];
+            this.sorted = new NLMeaning[capacity];
+        }
+
+        private void sentence(int startOffset, int endOffset) {
+            size = 0;
+            sentenceStart = startOffset;
+            sentenceEnd = endOffset;
+        }
+
+        /**
+         * Forgets the events of the current sentence.
+         */
+        private void discard() {
+            size = 0;
+        }
+
+        /**
+         * Passes the current sentence and its events to the visitor.
+         */
+        private void flush() {
+            try {
+                visitor.onSentence(sentenceStart, sentenceEnd);
+                for (int i = 0; i < size; i++) {
+                    if (terms[i]) {
+                        visitor.onTerm(startOffsets[i],
+                                endOffsets[i],
+                                MEANING_STATUSES[statuses[i]],
+                                MEANING_KINDS[kinds[i]],
+                                ids[i],
+                                probabilities[i]);
+                    } else {
+                        visitor.onMeaning(MEANING_KINDS[kinds[i]], ids[i], probabilities[i]);
+                    }
+                }
+            }
+            finally {
+                size = 0;
+            }
+        }
+
+        /**
+         * Makes room for one more event.
+         */
+        private void grow() {
+            if (size < terms.length) {
+                return;
+            }
+            int capacity = terms.length * 2;
+            terms = Arrays.copyOf(terms, capacity);
+            startOffsets = Arrays.copyOf(startOffsets, capacity);
+            endOffsets = Arrays.copyOf(endOffsets, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            probabilities = Arrays.copyOf(probabilities, capacity);
+        }
+
+        @Override
+        public void token(NLToken nlToken, int sentenceStartOffset, int so, int eo, ConversionContext ctx) {
+            checkNotNull(nlToken);
+            checkArgument(sentenceStartOffset >= 0, "Sentence start offset can't be negative! Offset found: %s", sentenceStartOffset);
+
+            term(sentenceStartOffset + so,
+                    sentenceStartOffset + eo,
+                    pruneMeanings(nlToken.getMeanings(), nlToken.getSelectedMeaning()),
+                    nlToken.getSelectedMeaning(),
+                    MeaningKind.UNKNOWN,
+                    ctx);
+        }
+
+        @Override
+        public void complexToken(int startOffset, int endOffset, NLComplexToken multiThing, ConversionContext ctx) {
+            Collection<? extends NLMeaning> meanings = multiThing.getMeanings();
+            if (meanings.isEmpty()) {
+                // no meanings, but we know the kind
+                term(startOffset,
+                        endOffset,
+                        meanings,
+                        multiThing.getSelectedMeaning(),
+                        getKind(multiThing, ctx.diagnostics),
+                        ctx);
+            } else {
+                term(startOffset,
+                        endOffset,
+                        pruneMeanings(meanings, multiThing.getSelectedMeaning()),
+                        multiThing.getSelectedMeaning(),
+                        MeaningKind.UNKNOWN,
+                        ctx);
+            }
+        }
+
+        /**
+         * @param kind if not {@link MeaningKind#UNKNOWN} and there is no
+         * selected meaning, a meaning of this kind with no id is reported
+         * after {@code meanings}
+         */
+        private void term(int startOffset,
+                int endOffset,
+                Collection<? extends NLMeaning> meanings,
+                @Nullable NLMeaning selected,
+                MeaningKind kind,
+                ConversionContext ctx) {
+
+            long selectedId = selected == null ? NLTextVisitor.NO_ID : kbId(selected, ctx.diagnostics);
+            MeaningStatus meaningStatus;
+            MeaningKind selectedKind = MeaningKind.UNKNOWN;
+            double selectedProbability = 0.0;
+            if (selectedId == NLTextVisitor.NO_ID) {
+                meaningStatus = ctx.checkedByUser ? MeaningStatus.NOT_SURE : MeaningStatus.TO_DISAMBIGUATE;
+            } else {
+                meaningStatus = ctx.checkedByUser ? MeaningStatus.REVIEWED : MeaningStatus.SELECTED;
+                selectedKind = selected instanceof NLEntityMeaning ? MeaningKind.ENTITY : MeaningKind.CONCEPT;
+                selectedProbability = selected.getProbability();
+            }
+
+            grow();
+            terms[size] = true;
+            startOffsets[size] = startOffset;
+            endOffsets[size] = endOffset;
+            statuses[size] = (byte) meaningStatus.ordinal();
+            kinds[size] = (byte) selectedKind.ordinal();
+            ids[size] = selectedId;
+            probabilities[size] = selectedProbability;
+            size++;
+
+            if (sorted.length < meanings.size()) {
+                sorted = new NLMeaning[Math.max(meanings.size(), sorted.length * 2)];
+            }
+            int n = 0;
+            for (NLMeaning m : meanings) {
+                if (m == null) {
+                    ctx.diagnostics.report(Issue.INVALID_MEANING, "Found null nlMeaning during conversion, skipping it");
+                } else if (m instanceof NLSenseMeaning || m instanceof NLEntityMeaning) {
+                    // insertion sort by decreasing probability, stable so
+                    // meanings of equal probability keep their order
+                    int i = n++;
+                    while (i > 0 && PROBABILITY_ORDER.compare(sorted[i - 1], m) < 0) {
+                        sorted[i] = sorted[i - 1];
+                        i--;
+                    }
+                    sorted[i] = m;
+                } else {
+                    ctx.diagnostics.report(Issue.INVALID_MEANING, "Found an unsupported meaning type: {0}, skipping it", m.getClass().getName(), null);
+                }
+            }
+
+            int termMeaningsStart = size;
+            for (int i = 0; i < n; i++) {
+                NLMeaning m = sorted[i];
+                sorted[i] = null;
+                meaning(m instanceof NLEntityMeaning ? MeaningKind.ENTITY : MeaningKind.CONCEPT,
+                        kbId(m, ctx.diagnostics),
+                        m.getProbability(),
+                        termMeaningsStart);
+            }
+
+            if (selectedId == NLTextVisitor.NO_ID && MeaningKind.UNKNOWN != kind) {
+                meaning(kind, NLTextVisitor.NO_ID, 1.0, termMeaningsStart);
+            }
+        }
+
+        /**
+         * Adds a meaning event, unless one with same kind, id and probability
+         * was already added for the term.
+         *
+         * @param termMeaningsStart index of the first meaning event of the
+         * term
+         */
+        private void meaning(MeaningKind kind, long id, double probability, int termMeaningsStart) {
+            byte kindOrdinal = (byte) kind.ordinal();
+            for (int i = size - 1; i >= termMeaningsStart; i--) {
+                if (probabilities[i] != probability) {
+                    // sorted by probability, equal ones can't be further back
+                    break;
+                }
+                if (kinds[i] == kindOrdinal && ids[i] == id) {
+                    return;
+                }
+            }
+            grow();
+            terms[size] = false;
+            kinds[size] = kindOrdinal;
+            ids[size] = id;
+            probabilities[size] = probability;
+            size++;
+        }
+    }
+
+    /**
+     * Returns the concept or entity id of provided meaning, or
+     * {@link UrlMapper#INVALID_ID} if it has none. Meanings which
+     * {@link #semTextMeaning(it.unitn.disi.sweb.core.nlp.model.NLMeaning, java.util.Locale) semTextMeaning}
+     * couldn't convert are reported to {@code diag}.
+     */
+    private static long kbId(NLMeaning m, ConversionDiagnostics diag) {
+        Long id;
+        if (m instanceof NLSenseMeaning) {
+            id = ((NLSenseMeaning) m).getConceptId();
+        } else if (m instanceof NLEntityMeaning) {
+            id = ((NLEntityMeaning) m).getObjectID();
+        } else {
+            diag.report(Issue.INVALID_MEANING, "Found an unsupported meaning type: {0}, skipping it", m.getClass().getName(), null);
+            return UrlMapper.INVALID_ID;
+        }
+        if (id == null) {
+            return UrlMapper.INVALID_ID;
+        }
+        if (id < -1) {
+            diag.report(Issue.INVALID_MEANING, "Found meaning id less than -1: {0}, skipping it", id, null);
+            return UrlMapper.INVALID_ID;
+        }
+        return id;
+    }
+
+    /**
+     * Adds a concept or instance term with provided id and weight, unless an
+     * equal one is already present.
+     */
+    private static void addMeaningTerm(boolean entity,
+            long id,
+            double weight,
+            List<ConceptTerm> concTerms,
+            List<InstanceTerm> entityTerms) {
+        if (entity) {
+            for (int i = 0; i < entityTerms.size(); i++) {
+                InstanceTerm it = entityTerms.get(i);
+                if (it.getValue() == id && it.getWeight() == weight) {
+                    return;
+                }
+            }
+            InstanceTerm entityTerm = new InstanceTerm();
+            entityTerm.setValue(id);
+            entityTerm.setWeight(weight);
+            entityTerms.add(entityTerm);
+        } else {
+            for (int i = 0; i < concTerms.size(); i++) {
+                ConceptTerm ct = concTerms.get(i);
+                if (ct.getValue() == id && ct.getWeight() == weight) {
+                    return;
+                }
+            }
+            ConceptTerm concTerm = new ConceptTerm();
+            concTerm.setValue(id);
+            concTerm.setWeight(weight);
+            concTerms.add(concTerm);
+        }
+    }
+
+    private List<String> stringsToStrings(@Nullable Iterable<String> strings, @Nullable String prependedLogMsg, ConversionDiagnostics diag) {
+        if (strings == null) {
+            diag.report(Issue.NULL_STRING, "{0} -- Found null strings", prependedLogMsg, null);
+            return new ArrayList();
+        }
+
+        List<String> ret = new ArrayList();
+        for (String string : strings) {
+            if (string == null) {
+                diag.report(Issue.NULL_STRING,
+                        "{0} -- Found null string, skipping it", prependedLogMsg, null);
             } else {
                 ret.add(string);
             }
@@ -601,22 +2506,29 @@ public final class NLTextConverter {
      *
      *
      * This function never throws, on error it simply returns a less
-     * meaningful... meaning and logs a warning.
+     * meaningful... meaning and logs a summary of the issues found.
      *
      * @param locale If unknown, use {@link Locale#ROOT}
      *
      * Warning: conversion may be lossy.
      */
     public Meaning semTextMeaning(@Nullable NLMeaning nlMeaning, Locale locale) {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        Meaning ret = semTextMeaning(nlMeaning, locale, diag);
+        logSummary(diag);
+        return ret;
+    }
+
+    private Meaning semTextMeaning(@Nullable NLMeaning nlMeaning, Locale locale, ConversionDiagnostics diag) {
         try {
             if (nlMeaning == null) {
-                LOG.warning("Found null nlMeaning during conversion to SemText meaning, returning empty Meaning.of()");
+                diag.report(Issue.INVALID_MEANING, "Found null nlMeaning during conversion to SemText meaning, returning empty Meaning.of()");
                 return Meaning.of();
             }
 
             MeaningKind kind = null;
             String url = "";
-            Long id;
+            Long id = null;
             Dict name;
             Dict description;
 
@@ -624,11 +2536,10 @@ public final class NLTextConverter {
                 NLSenseMeaning senseMeaning = ((NLSenseMeaning) nlMeaning);
                 kind = MeaningKind.CONCEPT;
                 id = senseMeaning.getConceptId();
-                if (id != null) {
-                    url = urlMapper.conceptIdToUrl(id);
-                }
-                name = dictName(senseMeaning, locale);
-                description = glossToDict(senseMeaning, "Error while extracting description from NLSenseMeaning");
+                ConceptParts parts = conceptParts(senseMeaning, locale, diag);
+                url = parts.url;
+                name = parts.name;
+                description = parts.description;
 
             } else if (nlMeaning instanceof NLEntityMeaning) {
                 NLEntityMeaning entityMeaning = ((NLEntityMeaning) nlMeaning);
@@ -637,85 +2548,209 @@ public final class NLTextConverter {
                 if (id != null) {
                     url = urlMapper.entityIdToUrl(id);
                 }
-                name = stringToDict(url, locale, "Error while extracting description from NLEntityMeaning");
-                description = stringToDict(entityMeaning.getDescription(), locale, "Error while extracting description from NLEntityMeaning");
+                name = stringToDict(url, locale, "Error while extracting description from NLEntityMeaning", diag);
+                description = stringToDict(entityMeaning.getDescription(), locale, "Error while extracting description from NLEntityMeaning", diag);
             } else {
                 throw new IllegalArgumentException("Found an unsupported meaning type: " + nlMeaning.getClass().getName());
             }
 
-            NLMeaningMetadata metadata = NLMeaningMetadata.of(
-                    stringToString(nlMeaning.getLemma(), "invalid lemma in NLMeaning"),
-                    stringToString(nlMeaning.getSummary(), "invalid summary in NLMeaning"));
-
-            return Meaning.builder()
+            Meaning.Builder meaningb = Meaning.builder()
                     .setId(url)
                     .setKind(kind)
                     .setProbability(nlMeaning.getProbability())
                     .setName(name)
-                    .setDescription(description)
-                    .setMetadata(ImmutableMap.of(NLTEXT_NAMESPACE, metadata))
-                     .build();
+                    .setDescription(description);
+
+            if (metadataMode.hasMeaningMetadata()) {
+                NLMeaningMetadata metadata = NLMeaningMetadata.of(
+                        stringToString(nlMeaning.getLemma(), "invalid lemma in NLMeaning", diag),
+                        stringToString(nlMeaning.getSummary(), "invalid summary in NLMeaning", diag),
+                        id);
+                meaningb.setMetadata(ImmutableMap.of(NLTEXT_NAMESPACE, metadata));
+            }
+            return meaningb.build();
         }
         catch (Exception ex) {
-            LOG.log(Level.SEVERE, "Error while converting NLMeaning to SemText meaning, returning empty Meaning.of()", ex);
+            diag.report(Issue.INVALID_MEANING, "Error while converting NLMeaning to SemText meaning, returning empty Meaning.of()", null, ex);
             return Meaning.of();
         }
     }
 
+    /**
+     * Converts provided NLMeaning to a semtext Meaning, reusing the meaning
+     * already converted in {@code ctx} if there is one with same kind, id,
+     * probability and content.
+     */
+    private Meaning semTextMeaning(@Nullable NLMeaning nlMeaning, ConversionContext ctx) {
+        MeaningKey key = null;
+        boolean metadata = metadataMode.hasMeaningMetadata();
+        if (nlMeaning instanceof NLSenseMeaning) {
+            Long id = ((NLSenseMeaning) nlMeaning).getConceptId();
+            if (id != null) {
+                key = new MeaningKey(false,
+                        id,
+                        nlMeaning.getProbability(),
+                        ctx.locale,
+                        nlMeaning.getLemma(),
+                        metadata ? nlMeaning.getSummary() : null,
+                        nlMeaning.getProp(NLTextUnit.PFX, SYNONYMOUS_LEMMAS),
+                        nlMeaning.getProp(NLTextUnit.PFX, GLOSS_MAP));
+            }
+        } else if (nlMeaning instanceof NLEntityMeaning) {
+            Long id = ((NLEntityMeaning) nlMeaning).getObjectID();
+            if (id != null) {
+                key = new MeaningKey(true,
+                        id,
+                        nlMeaning.getProbability(),
+                        ctx.locale,
+                        metadata ? nlMeaning.getLemma() : null,
+                        metadata ? nlMeaning.getSummary() : null,
+                        null,
+                        ((NLEntityMeaning) nlMeaning).getDescription());
+            }
+        }
+
+        if (key == null) {
+            return semTextMeaning(nlMeaning, ctx.locale, ctx.diagnostics);
+        }
+
+        Meaning ret = ctx.meanings.get(key);
+        if (ret == null) {
+            Meaning meaning = semTextMeaning(nlMeaning, ctx.locale, ctx.diagnostics);
+            ret = ctx.meanings.putIfAbsent(key, meaning);
+            if (ret == null) {
+                ret = meaning;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the meanings to convert according to {@link Builder#setMaxMeanings(int) maxMeanings}
+     * and {@link Builder#setMinProbability(double) minProbability}. Pruning is
+     * done on NLMeanings so discarded ones are never converted. The first of
+     * {@code meanings} equal to the {@code selected} meaning, if any, is always
+     * kept as it is, also when it is a distinct instance with a different
+     * probability (i.e. after a json round trip). Other meanings are kept or
+     * discarded by probability only.
+     */
+    private Collection<? extends NLMeaning> pruneMeanings(
+            Collection<? extends NLMeaning> meanings,
+            @Nullable NLMeaning selected) {
+
+        if (meanings.size() <= maxMeanings && minProbability <= 0.0) {
+            return meanings;
+        }
+
+        // min-heap, so the least probable meaning is the first to go
+        PriorityQueue<NLMeaning> top = new PriorityQueue<NLMeaning>(
+                Math.min(maxMeanings, meanings.size()) + 1,
+                PROBABILITY_ORDER);
+        NLMeaning kept = null;
+        for (NLMeaning m : meanings) {
+            if (m == null) {
+                continue;
+            }
+            if (kept == null && isSameMeaning(m, selected)) {
+                kept = m;
+                continue;
+            }
+            if (m.getProbability() < minProbability) {
+                continue;
+            }
+            top.add(m);
+            if (top.size() > maxMeanings) {
+                top.poll();
+            }
+        }
+        if (kept != null) {
+            if (top.size() == maxMeanings) {
+                top.poll();
+            }
+            top.add(kept);
+        }
+        return top;
+    }
+
+    /**
+     * Returns true if {@code m} is {@code selected} or an equal meaning, that
+     * is one of the same type with the same concept or entity id.
+     */
+    private static boolean isSameMeaning(NLMeaning m, @Nullable NLMeaning selected) {
+        if (selected == null) {
+            return false;
+        }
+        if (m == selected || m.equals(selected)) {
+            return true;
+        }
+        if (m.getClass() != selected.getClass()) {
+            return false;
+        }
+        Long id = nlMeaningId(m);
+        return id != null && id.equals(nlMeaningId(selected));
+    }
+
+    /**
+     * Returns the concept id of sense meanings or the entity id of entity
+     * meanings, or null if missing or not supported.
+     */
+    @Nullable
+    private static Long nlMeaningId(NLMeaning m) {
+        if (m instanceof NLSenseMeaning) {
+            return ((NLSenseMeaning) m).getConceptId();
+        } else if (m instanceof NLEntityMeaning) {
+            return ((NLEntityMeaning) m).getObjectID();
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Returns a sorted set according to the probability of provided meanings.
      * First element has the highest probability.
      *
      */
     private TreeSet<Meaning> makeSortedMeanings(
-            Set<? extends NLMeaning> meanings,
-            Locale locale) {
+            Collection<? extends NLMeaning> meanings,
+            ConversionContext ctx) {
 
         TreeSet<Meaning> ts = new TreeSet<Meaning>(Collections.reverseOrder());
         for (NLMeaning m : meanings) {
-            ts.add(semTextMeaning(m, locale));
+            ts.add(semTextMeaning(m, ctx));
         }
         return ts;
     }
 
     /**
-     * @param nlToken must have startOffset and endOffset otherwise throws
-     * IllegalArgumentException
-     * @param locale if unknown use {@link Locale#ROOT}
-     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)
-     * }
+     * @param so the start offset of the token within the sentence
+     * @param eo the end offset of the token within the sentence
+     * @param ctx the context of the NLText conversion
      */
     private Term semTextTerm(NLToken nlToken,
-            Locale locale,
             int sentenceStartOffset,
-            boolean checkedByUser) {
+            int so,
+            int eo,
+            ConversionContext ctx) {
 
         checkNotNull(nlToken);
-        checkNotNull(locale);
 
         checkArgument(sentenceStartOffset >= 0, "Sentence start offset can't be negative! Offset found: %s", sentenceStartOffset);
 
-        Integer so = (Integer) nlToken.getProp(NLTextUnit.PFX, "sentenceStartOffset");
-        Integer eo = (Integer) nlToken.getProp(NLTextUnit.PFX, "sentenceEndOffset");
-
-        if (so == null || eo == null) {
-            throw new IllegalArgumentException("Offsets within the sentence are null! sentenceStartOffset = " + so + " sentenceEndOffset = " + eo);
-        }
-
         int startOffset = sentenceStartOffset + so;
         int endOffset = sentenceStartOffset + eo;
         TreeSet<Meaning> meanings = makeSortedMeanings(
-                nlToken.getMeanings(),
-                locale
+                pruneMeanings(nlToken.getMeanings(), nlToken.getSelectedMeaning()),
+                ctx
         );
 
-        Meaning selectedMeaning;
+        Meaning selectedMeaning = nlToken.getSelectedMeaning() == null
+                ? null
+                : semTextMeaning(nlToken.getSelectedMeaning(), ctx);
         MeaningStatus meaningStatus;
 
-        if (nlToken.getSelectedMeaning() == null
-                || semTextMeaning(nlToken.getSelectedMeaning(), locale)
-                .getId().isEmpty()) {
-            if (checkedByUser) {
+        if (selectedMeaning == null
+                || selectedMeaning.getId().isEmpty()) {
+            if (ctx.checkedByUser) {
                 meaningStatus = MeaningStatus.NOT_SURE;
             } else {
                 meaningStatus = MeaningStatus.TO_DISAMBIGUATE;
@@ -723,25 +2758,32 @@ public final class NLTextConverter {
 
             selectedMeaning = null;
         } else {
-            if (checkedByUser) {
+            if (ctx.checkedByUser) {
                 meaningStatus = MeaningStatus.REVIEWED;
             } else {
                 meaningStatus = MeaningStatus.SELECTED;
             }
+        }
 
-            selectedMeaning = semTextMeaning(nlToken.getSelectedMeaning(), locale);
+        if (!metadataMode.hasTermMetadata()) {
+            return Term.of(
+                    startOffset,
+                    endOffset,
+                    meaningStatus,
+                    selectedMeaning,
+                    ImmutableList.copyOf(meanings));
         }
 
         List<String> sanitizedStems = new ArrayList();
-        String sanitizedStem = stringToString(nlToken.getDerivedStem(), "Found invalid stem in NLToken!");
+        String sanitizedStem = stringToString(nlToken.getDerivedStem(), "Found invalid stem in NLToken!", ctx.diagnostics);
         if (!sanitizedStem.isEmpty()) {
             sanitizedStems.add(sanitizedStem);
         }
-        String sanitizedText = stringToString(nlToken.getText(), "Found invalid text in NLToken");
+        String sanitizedText = stringToString(nlToken.getText(), "Found invalid text in NLToken", ctx.diagnostics);
         if (!sanitizedText.isEmpty()) {
             sanitizedStems.add(sanitizedText);
         }
-        List<String> sanitizedDerivedLemmas = stringsToStrings(nlToken.getDerivedLemmas(), "Found invalid derived lemma in nltoken!");
+        List<String> sanitizedDerivedLemmas = stringsToStrings(nlToken.getDerivedLemmas(), "Found invalid derived lemma in nltoken!", ctx.diagnostics);
 
         return Term.of(
                 startOffset,
@@ -763,27 +2805,26 @@ public final class NLTextConverter {
 
     /**
      *
-     * @param checkedByUser see {@link #semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)
-     * @param locale If unknown, use {@link Locale#ROOT}
+     * @param ctx the context of the NLText conversion
      *
      */
     private Term semTextTerm(int startOffset,
             int endOffset,
             NLComplexToken multiThing,
-            Locale locale,
-            boolean checkedByUser) {
+            ConversionContext ctx) {
 
         Set<NLMeaning> ms = new HashSet(multiThing.getMeanings());
 
         TreeSet<Meaning> sortedMeanings;
         MeaningStatus meaningStatus;
         @Nullable
-        Meaning selectedMeaning;
+        Meaning selectedMeaning = multiThing.getSelectedMeaning() == null
+                ? null
+                : semTextMeaning(multiThing.getSelectedMeaning(), ctx);
 
-        if (multiThing.getSelectedMeaning() == null
-                || semTextMeaning(multiThing.getSelectedMeaning(), locale)
-                .getId().isEmpty()) {
-            if (checkedByUser) {
+        if (selectedMeaning == null
+                || selectedMeaning.getId().isEmpty()) {
+            if (ctx.checkedByUser) {
                 meaningStatus = MeaningStatus.NOT_SURE;
             } else {
                 meaningStatus = MeaningStatus.TO_DISAMBIGUATE;
@@ -791,34 +2832,39 @@ public final class NLTextConverter {
 
             selectedMeaning = null;
         } else {
-            if (checkedByUser) {
+            if (ctx.checkedByUser) {
                 meaningStatus = MeaningStatus.REVIEWED;
             } else {
                 meaningStatus = MeaningStatus.SELECTED;
             }
-
-            selectedMeaning = semTextMeaning(
-                    multiThing.getSelectedMeaning(),
-                    locale);
         }
 
         if (ms.size() > 0) {
-            sortedMeanings = makeSortedMeanings(ms, locale);
+            sortedMeanings = makeSortedMeanings(pruneMeanings(ms, multiThing.getSelectedMeaning()), ctx);
         } else { // no meanings, but we know the kind                        
             sortedMeanings = new TreeSet<Meaning>();
-            MeaningKind kind = getKind(multiThing);
+            MeaningKind kind = getKind(multiThing, ctx.diagnostics);
             if (selectedMeaning == null
                     && MeaningKind.UNKNOWN != kind) {
-                NLMeaningMetadata metadata = NLMeaningMetadata.of("", "");
-                sortedMeanings.add(Meaning.builder()
+                Meaning.Builder meaningb = Meaning.builder()
                         .setKind(kind)
-                        .setProbability(1.0)
-                        .setMetadata(ImmutableMap.of(NLTEXT_NAMESPACE, metadata))
-                        .build());
+                        .setProbability(1.0);
+                if (metadataMode.hasMeaningMetadata()) {
+                    meaningb.setMetadata(ImmutableMap.of(NLTEXT_NAMESPACE, NLMeaningMetadata.of("", "")));
+                }
+                sortedMeanings.add(meaningb.build());
             }
         }
 
-        List<String> sanitizedDerivedLemmas = stringsToStrings(multiThing.getDerivedLemmas(), "Found invalid derived lemma in NLComplexToken!");
+        if (!metadataMode.hasTermMetadata()) {
+            return Term.of(startOffset,
+                    endOffset,
+                    meaningStatus,
+                    selectedMeaning,
+                    sortedMeanings);
+        }
+
+        List<String> sanitizedDerivedLemmas = stringsToStrings(multiThing.getDerivedLemmas(), "Found invalid derived lemma in NLComplexToken!", ctx.diagnostics);
 
         return Term.of(startOffset,
                 endOffset,
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.trentorise.opendata.semtext.SemText;
+import eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics.Issue;
+import eu.trentorise.opendata.semtext.nltext.NLTextConverter.StreamingConversion;
+import it.unitn.disi.sweb.core.nlp.model.NLSentence;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Converts NLText json to SemText reading one sentence at a time, so the
+ * whole NLText is never held in memory. Sentences are converted by the
+ * provided {@link NLTextConverter} following the same rules of
+ * {@link NLTextConverter#semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean) semText}.
+ * Kept apart from NLTextConverter so only users of this class need Jackson
+ * databind. <br/>
+ * <br/>
+ * The same instance can be shared among conversions running in different
+ * threads, as long as the object mapper is not reconfigured.
+ *
+ * @author David Leoni
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public final class NLTextJsonStreamConverter {
+
+    /**
+     * Name of the NLText json property holding the sentences
+     */
+    private static final String SENTENCES_PROPERTY = "sentences";
+
+    /**
+     * Name of the NLText json property holding the text
+     */
+    private static final String TEXT_PROPERTY = "text";
+
+    /**
+     * Name of the NLText json property holding the language
+     */
+    private static final String LANGUAGE_PROPERTY = "language";
+
+    private final NLTextConverter converter;
+    private final ObjectMapper objectMapper;
+
+    private NLTextJsonStreamConverter(NLTextConverter converter, ObjectMapper objectMapper) {
+        checkNotNull(converter);
+        checkNotNull(objectMapper);
+        this.converter = converter;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns a stream converter.
+     *
+     * @param converter the converter used to convert sentences
+     * @param objectMapper the mapper used to deserialize
+     * {@link NLSentence NLSentences}
+     */
+    public static NLTextJsonStreamConverter of(NLTextConverter converter, ObjectMapper objectMapper) {
+        return new NLTextJsonStreamConverter(converter, objectMapper);
+    }
+
+    /**
+     * Reads an NLText from json and converts it to a SemText. Problems found
+     * during conversion are summarized in a log line.
+     *
+     * @param checkedByUser see {@link NLTextConverter#semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * @see #semText(com.fasterxml.jackson.core.JsonParser, boolean,
+     * eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics)
+     */
+    public SemText semText(JsonParser parser, boolean checkedByUser) throws IOException {
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        SemText ret = semText(parser, checkedByUser, diag);
+        NLTextConverter.logSummary(diag);
+        return ret;
+    }
+
+    /**
+     * Reads an NLText from json and converts it to a SemText, so peak memory
+     * is bounded by the largest sentence rather than the whole NLText. Each
+     * sentence is deserialized, converted and then discarded. Sentences found
+     * before the {@code language} property can only be converted once the
+     * language is known and are kept until then, so for bounded memory
+     * {@code language} should precede {@code sentences} in the json.
+     *
+     * @param parser a parser positioned before or at the start of the NLText
+     * json object. When the method returns, it will be positioned at the end
+     * of the object.
+     * @param checkedByUser see {@link NLTextConverter#semText(it.unitn.disi.sweb.core.nlp.model.NLText, boolean)}
+     * @param diagnostics collects the problems found during conversion
+     * @throws IOException on malformed json or if a sentence can't be
+     * deserialized.
+     */
+    public SemText semText(JsonParser parser,
+            boolean checkedByUser,
+            ConversionDiagnostics diagnostics) throws IOException {
+        checkNotNull(parser);
+        checkNotNull(diagnostics);
+
+        JsonToken token = parser.getCurrentToken() == null ? parser.nextToken() : parser.getCurrentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            diagnostics.report(Issue.SKIPPED_DOCUMENT, "Found null NLText while converting to SemText, returning empty semtext");
+            return SemText.of();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected start of NLText object, found " + token + " instead", parser.getCurrentLocation());
+        }
+
+        String text = null;
+        StreamingConversion conversion = null;
+        List<NLSentence> pending = new ArrayList<NLSentence>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String property = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (SENTENCES_PROPERTY.equals(property) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                        diagnostics.report(Issue.SKIPPED_SENTENCE, "Found null NLSentence, skipping it.");
+                        continue;
+                    }
+                    NLSentence nls = objectMapper.readValue(parser, NLSentence.class);
+                    if (conversion == null) {
+                        pending.add(nls);
+                    } else {
+                        conversion.add(nls);
+                    }
+                }
+            } else if (TEXT_PROPERTY.equals(property)) {
+                text = value == JsonToken.VALUE_NULL ? null : parser.getText();
+            } else if (LANGUAGE_PROPERTY.equals(property) && conversion == null) {
+                String lang = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                conversion = start(lang, text, pending, checkedByUser, diagnostics);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (conversion == null) {
+            conversion = start(null, text, pending, checkedByUser, diagnostics);
+        }
+
+        return conversion.finish(text);
+    }
+
+    /**
+     * Starts the conversion once the language is known, converting and
+     * clearing the {@code pending} sentences.
+     */
+    private StreamingConversion start(@Nullable String lang,
+            @Nullable String text,
+            List<NLSentence> pending,
+            boolean checkedByUser,
+            ConversionDiagnostics diagnostics) {
+        StreamingConversion ret = converter.streamingConversion(lang, text, checkedByUser, diagnostics);
+        for (NLSentence nls : pending) {
+            ret.add(nls);
+        }
+        pending.clear();
+        return ret;
+    }
+}
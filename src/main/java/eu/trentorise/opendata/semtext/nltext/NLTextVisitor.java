@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext;
+
+import eu.trentorise.opendata.disiclient.UrlMapper;
+import eu.trentorise.opendata.semtext.MeaningKind;
+import eu.trentorise.opendata.semtext.MeaningStatus;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Receives the sentences, terms and meanings of an NLText as they are found by
+ * {@link NLTextConverter#visit(it.unitn.disi.sweb.core.nlp.model.NLText, boolean, NLTextVisitor) NLTextConverter.visit},
+ * following the same rules used to build a SemText but without creating
+ * it. Events come in document order: {@link #onSentence(int, int) onSentence}
+ * for each sentence, then for each of its terms
+ * {@link #onTerm(int, int, MeaningStatus, MeaningKind, long, double) onTerm}
+ * followed by {@link #onMeaning(MeaningKind, long, double) onMeaning} for each
+ * of the term meanings. Events of a sentence are delivered once the whole
+ * sentence has been converted, so sentences a SemText conversion would drop
+ * produce no events at all. <br/>
+ * <br/>
+ * Ids are the numeric ids of concepts and entities in the knowledge base, use
+ * a {@link UrlMapper} to turn them into the urls a SemText would hold. All
+ * methods do nothing by default, so subclasses only need to override the ones
+ * they are interested in. Exceptions thrown by the methods stop the visit.
+ *
+ * @author David Leoni
+ */
+@ParametersAreNonnullByDefault
+public abstract class NLTextVisitor {
+
+    /**
+     * Id given for meanings without an id.
+     */
+    public static final long NO_ID = UrlMapper.INVALID_ID;
+
+    /**
+     * Called for each converted sentence, before its terms.
+     *
+     * @param startOffset the start offset of the sentence within the text
+     * @param endOffset the end offset of the sentence within the text
+     */
+    public void onSentence(int startOffset, int endOffset) {
+    }
+
+    /**
+     * Called for each term, before its meanings.
+     *
+     * @param startOffset the start offset of the term within the text
+     * @param endOffset the end offset of the term within the text
+     * @param meaningStatus the status the SemText term would have
+     * @param selectedKind the kind of the selected meaning, or
+     * {@link MeaningKind#UNKNOWN} if there is no selected meaning
+     * @param selectedId the id of the selected meaning, or {@link #NO_ID} if
+     * there is no selected meaning
+     * @param selectedProbability the probability of the selected meaning, or
+     * 0.0 if there is no selected meaning
+     */
+    public void onTerm(int startOffset,
+            int endOffset,
+            MeaningStatus meaningStatus,
+            MeaningKind selectedKind,
+            long selectedId,
+            double selectedProbability) {
+    }
+
+    /**
+     * Called for each meaning of the last visited term, by decreasing
+     * probability. Meanings with the same kind, id and probability are
+     * reported once. The selected meaning is also among them, unless it is
+     * not one of the token meanings.
+     *
+     * @param id the id of the meaning, or {@link #NO_ID} if unknown
+     */
+    public void onMeaning(MeaningKind kind, long id, double probability) {
+    }
+}
@@ -17,7 +17,10 @@ package eu.trentorise.opendata.semtext.nltext;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+import eu.trentorise.opendata.disiclient.UrlKind;
 import eu.trentorise.opendata.disiclient.UrlMapper;
+import eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics.Issue;
 import eu.trentorise.opendata.semtext.Meaning;
 import eu.trentorise.opendata.semtext.MeaningKind;
 import eu.trentorise.opendata.semtext.MeaningStatus;
@@ -33,6 +36,7 @@ import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticTerm;
 import it.unitn.disi.sweb.webapi.model.eb.sstring.StringTerm;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -53,6 +57,16 @@ public final class SemanticStringConverter {
 
     private static final SemanticStringConverter INSTANCE = new SemanticStringConverter();
 
+    /**
+     * Converters in use for each url mapper. Both mappers and converters are
+     * weakly referenced, so unused ones get garbage collected.
+     */
+    private static final ConcurrentMap<UrlMapper, SemanticStringConverter> REGISTRY = new MapMaker().weakKeys().weakValues().makeMap();
+
+    static {
+        REGISTRY.put(INSTANCE.urlMapper, INSTANCE);
+    }
+
     private UrlMapper urlMapper;
 
     private SemanticStringConverter() {
@@ -75,120 +89,212 @@ public final class SemanticStringConverter {
 
     /**
      * Returns a converter using the provided url mapper.
+     * Converters are shared: while a converter is in use, asking for one with
+     * the same url mapper returns the same instance.
      */
     public static SemanticStringConverter of(UrlMapper urlMapper) {
-        return new SemanticStringConverter(urlMapper);
+        checkNotNull(urlMapper);
+        SemanticStringConverter ret = REGISTRY.get(urlMapper);
+        if (ret == null) {
+            SemanticStringConverter converter = new SemanticStringConverter(urlMapper);
+            ret = REGISTRY.putIfAbsent(urlMapper, converter);
+            if (ret == null) {
+                ret = converter;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the knowledge base id stored in the {@link NLMeaningMetadata} of
+     * meanings converted from NLText, so their url doesn't need to be parsed.
+     * The id is only trusted if the meaning url is the one this converter
+     * mapper gives for it, so meanings whose url was changed afterwards are
+     * not exported with a stale id.
+     *
+     * @return the id or {@link UrlMapper#INVALID_ID} if the meaning has no
+     * such id.
+     */
+    private long kbId(Meaning m, UrlKind kind) {
+        if (m.getId().length() > 0 && m.hasMetadata(NLTextConverter.NLTEXT_NAMESPACE)) {
+            Object metadata = m.getMetadata(NLTextConverter.NLTEXT_NAMESPACE);
+            if (metadata instanceof NLMeaningMetadata) {
+                Long id = ((NLMeaningMetadata) metadata).getKbId();
+                if (id != null && id >= -1 && urlMapper.isUrlOf(kind, m.getId(), id)) {
+                    return id;
+                }
+            }
+        }
+        return UrlMapper.INVALID_ID;
     }
 
-    private void addMeaning(Meaning m, double probability, List<ConceptTerm> concTerms, List<InstanceTerm> entityTerms) {
+    private void addMeaning(Meaning m, double probability, List<ConceptTerm> concTerms, List<InstanceTerm> entityTerms, ConversionDiagnostics diag) {
         checkNotNull(m);
         checkNotNull(concTerms);
         checkNotNull(entityTerms);
 
         if (MeaningKind.CONCEPT.equals(m.getKind())) {
+            long id = kbId(m, UrlKind.CONCEPT);
+            if (id == UrlMapper.INVALID_ID) {
+                id = urlMapper.tryConceptUrlToId(m.getId());
+            }
+            if (id == UrlMapper.INVALID_ID) {
+                diag.report(Issue.INVALID_MEANING_ID, "Found invalid concept url {0}, skipping it!", m.getId(), null);
+                return;
+            }
             ConceptTerm concTerm = new ConceptTerm();
-            concTerm.setValue(urlMapper.conceptUrlToId(m.getId()));
+            concTerm.setValue(id);
 
             concTerm.setWeight(probability);
             concTerms.add(concTerm);
             return;
         }
         if (MeaningKind.ENTITY.equals(m.getKind())) {
+            long id = kbId(m, UrlKind.ENTITY);
+            if (id == UrlMapper.INVALID_ID) {
+                id = urlMapper.tryEntityUrlToId(m.getId());
+            }
+            if (id == UrlMapper.INVALID_ID) {
+                diag.report(Issue.INVALID_MEANING_ID, "Found invalid entity url {0}, skipping it!", m.getId(), null);
+                return;
+            }
             InstanceTerm entityTerm = new InstanceTerm();
-            entityTerm.setValue(urlMapper.entityUrlToId(m.getId()));
+            entityTerm.setValue(id);
             entityTerm.setWeight(probability);
             entityTerms.add(entityTerm);
             return;
         }
         if (MeaningKind.UNKNOWN.equals(m.getKind())
                 && m.getId().length() > 0) {
-            LOG.log(Level.WARNING, "Found meaning of kind UNKNOWN with non-empty id: '{'0'}', skipping it !{0}", m.getId());
+            diag.report(Issue.UNKNOWN_MEANING_WITH_ID, "Found meaning of kind UNKNOWN with non-empty id: {0}, skipping it!", m.getId(), null);
             return;
         }
         throw new IllegalArgumentException("Found not supported MeaningKind: " + m.getKind());
     }
 
+    /**
+     * Adds a string term of weight 1.0 with provided value, unless a string
+     * term with the same value is already present.
+     */
+    static void addStringTerm(String value, List<StringTerm> stringTerms) {
+        for (int i = 0; i < stringTerms.size(); i++) {
+            if (value.equals(stringTerms.get(i).getValue())) {
+                return;
+            }
+        }
+        StringTerm stringTerm = new StringTerm();
+        stringTerm.setValue(value);
+        stringTerm.setWeight(1.0);
+        stringTerms.add(stringTerm);
+    }
+
   /**
      * Converts input semantic text into a semantic string. For each Term of
      * input semantic text a ComplexConcept holding one semantic term is
-     * created. Warning: conversion may be lossy.
+     * created. Warning: conversion may be lossy, and repeated derived lemmas
+     * and stems of a term are turned into a single string term.
      *
      * @param st the semantic string to convert
      * @return a semantic string representation of input semantic text
+     * @see #semanticString(eu.trentorise.opendata.semtext.SemText,
+     * eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics)
      */
     public SemanticString semanticString(SemText st) {
-        List<ComplexConcept> complexConcepts = new ArrayList();
+        ConversionDiagnostics diag = ConversionDiagnostics.of(0, 0);
+        SemanticString ret = semanticString(st, diag);
+        if (diag.getTotalCount() > 0) {
+            LOG.log(Level.FINE, "Found issues during SemText conversion: {0}", diag);
+        }
+        return ret;
+    }
+
+    /**
+     * Same as {@link #semanticString(eu.trentorise.opendata.semtext.SemText)}
+     * but problems found during conversion are reported to {@code diagnostics}
+     * instead of being logged.
+     */
+    public SemanticString semanticString(SemText st, ConversionDiagnostics diagnostics) {
+        checkNotNull(diagnostics);
+        int termsCount = 0;
+        for (Sentence sentence : st.getSentences()) {
+            termsCount += sentence.getTerms().size();
+        }
+        List<ComplexConcept> complexConcepts = new ArrayList(termsCount);
 
         for (Sentence sentence : st.getSentences()) {
             for (Term stTerm : sentence.getTerms()) {
-                List<SemanticTerm> semTerms = new ArrayList();
-                List<ConceptTerm> concTerms = new ArrayList();
-                List<InstanceTerm> entityTerms = new ArrayList();
-                List<StringTerm> stringTerms = new ArrayList();
+                Meaning selMeaning = stTerm.getSelectedMeaning();
+                int conceptsCount = 0;
+                int entitiesCount = 0;
+                for (Meaning m : stTerm.getMeanings()) {
+                    if (MeaningKind.CONCEPT.equals(m.getKind())) {
+                        conceptsCount++;
+                    } else if (MeaningKind.ENTITY.equals(m.getKind())) {
+                        entitiesCount++;
+                    }
+                }
+                if (selMeaning != null) {
+                    if (MeaningKind.CONCEPT.equals(selMeaning.getKind())) {
+                        conceptsCount++;
+                    } else if (MeaningKind.ENTITY.equals(selMeaning.getKind())) {
+                        entitiesCount++;
+                    }
+                }
+                List<ConceptTerm> concTerms = new ArrayList(conceptsCount);
+                List<InstanceTerm> entityTerms = new ArrayList(entitiesCount);
 
-                SemanticTerm semTerm = new SemanticTerm();
                 if (MeaningStatus.SELECTED.equals(stTerm.getMeaningStatus())
                         || MeaningStatus.REVIEWED.equals(stTerm.getMeaningStatus())) {
                     // super high prob so we're sure selected meaning gets the highest weight
-                    addMeaning(stTerm.getSelectedMeaning(), 5.0, concTerms, entityTerms);
+                    addMeaning(selMeaning, 5.0, concTerms, entityTerms, diagnostics);
                 }
 
-                for (Meaning m : stTerm.getMeanings()) {                    
-                    Meaning selMeaning = stTerm.getSelectedMeaning();
+                for (Meaning m : stTerm.getMeanings()) {
                     boolean sameAsSelMeaning = selMeaning != null && selMeaning.getId().equals(m.getId());
-                    if (!"".equals(m.getId()) && !sameAsSelMeaning){
-                        addMeaning(m, m.getProbability(), concTerms, entityTerms);                            
-                    }                                                                                                        
+                    if (!"".equals(m.getId()) && !sameAsSelMeaning) {
+                        addMeaning(m, m.getProbability(), concTerms, entityTerms, diagnostics);
+                    }
                 }
 
-                boolean foundNLTermMetadata = false;
+                String text = st.getText(stTerm);
+                List<StringTerm> stringTerms;
+                NLTermMetadata nlTermMetadata = null;
                 if (stTerm.hasMetadata(NLTextConverter.NLTEXT_NAMESPACE)) {
                     Object metadataObj = stTerm.getMetadata(NLTextConverter.NLTEXT_NAMESPACE);
 
                     if (metadataObj instanceof NLTermMetadata) {
-                     
-                        foundNLTermMetadata = true;
-                        NLTermMetadata nlTermMetadata = (NLTermMetadata) metadataObj;
-                        for (String derivedLemma : nlTermMetadata.getDerivedLemmas()) {
-                            StringTerm stringTerm = new StringTerm();
-                            stringTerm.setValue(derivedLemma);
-                            stringTerm.setWeight(1.0);
-                            stringTerms.add(stringTerm);
-                        }
-
-                        for (String stem : nlTermMetadata.getStems()) {
-                            StringTerm stringTerm = new StringTerm();
-                            stringTerm.setValue(stem);
-                            stringTerm.setWeight(1.0);
-                            stringTerms.add(stringTerm);
-                        }
-
+                        nlTermMetadata = (NLTermMetadata) metadataObj;
                     } else {
-                        LOG.log(Level.FINE, "Expected instance of {0}" + " in metadata of namespace " + NLTextConverter.NLTEXT_NAMESPACE + " for {1}, found instead object {2}, resulting SemanticString might not be properly indexable", new Object[]{NLTermMetadata.class.getName(), stTerm, metadataObj});                        
+                        diagnostics.report(Issue.MISSING_TERM_METADATA, "Expected instance of " + NLTermMetadata.class.getName() + " in metadata of namespace " + NLTextConverter.NLTEXT_NAMESPACE + " for {0}, resulting SemanticString might not be properly indexable", stTerm, null);
                     }
 
                 } else {
-                    LOG.log(Level.FINE, "Couldn''t find metadata in namespace "+  NLTextConverter.NLTEXT_NAMESPACE + " for {0}, resulting SemanticString might not be properly indexable", stTerm);
+                    diagnostics.report(Issue.MISSING_TERM_METADATA, "Couldn''t find metadata in namespace " + NLTextConverter.NLTEXT_NAMESPACE + " for {0}, resulting SemanticString might not be properly indexable", stTerm, null);
                 }
 
-                
-                if (!foundNLTermMetadata){
-                    StringTerm wholeText = new StringTerm();
-                    wholeText.setValue(st.getText(stTerm));
-                    wholeText.setWeight(1.0);
-                    stringTerms.add(wholeText);                    
+                if (nlTermMetadata == null) {
+                    stringTerms = new ArrayList(1);
+                    addStringTerm(text, stringTerms);
+                } else {
+                    stringTerms = new ArrayList(nlTermMetadata.getDerivedLemmas().size() + nlTermMetadata.getStems().size());
+                    for (String derivedLemma : nlTermMetadata.getDerivedLemmas()) {
+                        addStringTerm(derivedLemma, stringTerms);
+                    }
+                    for (String stem : nlTermMetadata.getStems()) {
+                        addStringTerm(stem, stringTerms);
+                    }
                 }
-                
 
+                SemanticTerm semTerm = new SemanticTerm();
                 semTerm.setOffset(stTerm.getStart());
-                semTerm.setText(st.getText(stTerm));
+                semTerm.setText(text);
                 semTerm.setConceptTerms(concTerms);
                 semTerm.setInstanceTerms(entityTerms);
                 semTerm.setStringTerms(stringTerms);
 
+                List<SemanticTerm> semTerms = new ArrayList(1);
                 semTerms.add(semTerm);
-                ComplexConcept cc = new ComplexConcept(semTerms);
-                complexConcepts.add(cc);
+                complexConcepts.add(new ComplexConcept(semTerms));
             }
         }
 
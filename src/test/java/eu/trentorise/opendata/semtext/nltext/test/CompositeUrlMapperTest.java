@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Trento Rise.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.trentorise.opendata.semtext.nltext.test;
+
+import eu.trentorise.opendata.disiclient.CompositeUrlMapper;
+import eu.trentorise.opendata.disiclient.ParsedUrl;
+import eu.trentorise.opendata.disiclient.UrlKind;
+import eu.trentorise.opendata.disiclient.UrlMapper;
+import org.junit.Assert;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author David Leoni
+ */
+public class CompositeUrlMapperTest {
+
+    private static final String BASE_1 = "http://entitybase.org";
+    private static final String BASE_2 = "http://entitybase.org/api";
+    private static final String BASE_3 = "https://entitypedia.org/";
+
+    @Test
+    public void testRouting() {
+        CompositeUrlMapper cm = CompositeUrlMapper.of(BASE_1, BASE_2, BASE_3);
+        UrlMapper m1 = cm.getMapper(0);
+        UrlMapper m2 = cm.getMapper(1);
+        UrlMapper m3 = cm.getMapper(2);
+        assertSame(m3, cm.getMapper("https://entitypedia.org"));
+        assertNull(cm.getMapper("http://other.org"));
+
+        CompositeUrlMapper.RoutedUrl routed = cm.classify(m2.conceptIdToUrl(5L));
+        assertSame(m2, routed.getMapper());
+        assertEquals(ParsedUrl.of(UrlKind.CONCEPT, 5L), routed.getParsedUrl());
+
+        routed = cm.classify(m1.entityNewIdToUrl(6L));
+        assertSame(m1, routed.getMapper());
+        assertEquals(ParsedUrl.of(UrlKind.ENTITY_NEW, 6L), routed.getParsedUrl());
+
+        routed = cm.classify(m3.attrDefIdToUrl(7L, 8L));
+        assertSame(m3, routed.getMapper());
+        assertEquals(ParsedUrl.of(UrlKind.ATTR_DEF, 7L, 8L), routed.getParsedUrl());
+
+        // needs java.net.URL normalization
+        routed = cm.classify("HTTPS://entitypedia.org/types/9");
+        assertSame(m3, routed.getMapper());
+        assertEquals(ParsedUrl.of(UrlKind.ETYPE, 9L), routed.getParsedUrl());
+
+        assertSame(m1, cm.route(m1.conceptIdToUrl(1L)));
+        assertNull(cm.route("http://other.org/concepts/1"));
+        assertNull(cm.route(BASE_1 + "/concepts/x"));
+        assertEquals(UrlKind.UNKNOWN, cm.classify("bla").getParsedUrl().getKind());
+    }
+
+    @Test
+    public void testInvalidBases() {
+        try {
+            CompositeUrlMapper.of();
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+
+        try {
+            CompositeUrlMapper.of(BASE_1, BASE_1 + "/");
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+    }
+}
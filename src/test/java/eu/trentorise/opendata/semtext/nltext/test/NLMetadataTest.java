@@ -81,6 +81,7 @@ public class NLMetadataTest {
     @Test
     public void testNLMetadataJackson() throws IOException {
         testJsonConv(objectMapper, LOG, NLMeaningMetadata.of("a", "b"));
+        testJsonConv(objectMapper, LOG, NLMeaningMetadata.of("a", "b", 3L));
 
         String json = changeField(objectMapper, LOG, NLMeaningMetadata.of("a", "b"), "lemma", NullNode.instance);
 
@@ -182,6 +183,9 @@ public class NLMetadataTest {
 
         assertEquals(NLMeaningMetadata.of("a", "b").hashCode(), NLMeaningMetadata.of("a", "b").hashCode());
         assertNotEquals(NLMeaningMetadata.of("a", "b"), NLMeaningMetadata.of("a", "c"));
+        assertEquals(NLMeaningMetadata.of("a", "b", 3L), NLMeaningMetadata.of("a", "b", 3L));
+        assertEquals(NLMeaningMetadata.of("a", "b", 3L).hashCode(), NLMeaningMetadata.of("a", "b", 3L).hashCode());
+        assertNotEquals(NLMeaningMetadata.of("a", "b"), NLMeaningMetadata.of("a", "b", 3L));
         assertFalse(NLMeaningMetadata.of("a", "b").equals(null));
         assertFalse(NLMeaningMetadata.of("a", "b").equals("c"));
 
@@ -1,32 +1,55 @@
 package eu.trentorise.opendata.semtext.nltext.test;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import eu.trentorise.opendata.commons.Dict;
 import eu.trentorise.opendata.commons.TodConfig;
+import eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics;
+import eu.trentorise.opendata.semtext.nltext.MetadataMode;
 import eu.trentorise.opendata.semtext.nltext.NLTextConverter;
+import eu.trentorise.opendata.semtext.nltext.NLTextJsonStreamConverter;
+import eu.trentorise.opendata.semtext.nltext.NLTextVisitor;
+import eu.trentorise.opendata.semtext.nltext.SemanticStringConverter;
 import eu.trentorise.opendata.disiclient.UrlMapper;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import it.unitn.disi.sweb.core.nlp.model.NLMeaning;
 import it.unitn.disi.sweb.core.nlp.model.NLSenseMeaning;
 import it.unitn.disi.sweb.core.nlp.model.NLSentence;
 import it.unitn.disi.sweb.core.nlp.model.NLText;
 import it.unitn.disi.sweb.core.nlp.model.NLTextUnit;
 import it.unitn.disi.sweb.core.nlp.model.NLToken;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticString;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticTerm;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import eu.trentorise.opendata.semtext.MeaningKind;
 import eu.trentorise.opendata.semtext.Meaning;
 import eu.trentorise.opendata.semtext.MeaningStatus;
 import eu.trentorise.opendata.semtext.SemText;
+import eu.trentorise.opendata.semtext.Sentence;
 import eu.trentorise.opendata.semtext.Term;
 import eu.trentorise.opendata.semtext.nltext.NLMeaningMetadata;
 import eu.trentorise.opendata.semtext.nltext.NLTermMetadata;
@@ -279,6 +302,40 @@ public class NLTextConverterTest {
         return ret;
     }
 
+    /**
+     * Returns an NLText in Italian with a sentence for each pair of letters,
+     * whose first letter is a token with a meaning of the corresponding
+     * provided concept.
+     *
+     * <pre>
+     * 0123456789
+     * ab cd ef
+     * a  c  e     tokens
+     * </pre>
+     *
+     * @param middleOffsets if false the middle sentence has no offsets
+     */
+    private static NLText threeSentences(boolean middleOffsets, long conceptId1, long conceptId2, long conceptId3) {
+        String text = "ab cd ef";
+        long[] conceptIds = {conceptId1, conceptId2, conceptId3};
+
+        NLText nltext = new NLText(text);
+        nltext.setLanguage("it");
+        for (int i = 0; i < 3; i++) {
+            NLSentence sentence = new NLSentence(text.substring(i * 3, i * 3 + 2));
+            if (i != 1 || middleOffsets) {
+                sentence.setProp(NLTextUnit.PFX, START_OFFSET, i * 3);
+                sentence.setProp(NLTextUnit.PFX, END_OFFSET, i * 3 + 2);
+            }
+            NLToken tok = nlToken(0, 1, null,
+                    nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, conceptIds[i], 0.5f));
+            tok.setText(text.substring(i * 3, i * 3 + 1));
+            sentence.addToken(tok);
+            nltext.addSentence(sentence);
+        }
+        return nltext;
+    }
+
     private static NLEntityMeaning nlEntityMeaning(String lemma, String description, long entityId, float probability) {
         NLEntityMeaning ret = new NLEntityMeaning();
         ret.setLemma(lemma);
@@ -385,6 +442,7 @@ public class NLTextConverterTest {
         NLMeaningMetadata metadata1 = (NLMeaningMetadata) meaning1.getMetadata(NLTextConverter.NLTEXT_NAMESPACE);
         assertEquals(TEST_LEMMA_2, metadata1.getLemma());
         assertEquals("", metadata1.getSummary());
+        assertEquals(Long.valueOf(TEST_CONCEPT_2_ID), metadata1.getKbId());
 
         Dict name1 = meaning1.getName();
         assertEquals(sm2.getLemma(), name1.string(Locale.ROOT));
@@ -731,10 +789,820 @@ public class NLTextConverterTest {
 
     }
 
+    /**
+     * Parallel conversion should give the same sentences in the same order of
+     * the sequential one, skipping sentences with no offsets.
+     */
+    @Test
+    public void testParallelSentences() {
+        NLText nltext = threeSentences(false, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SemText seq = conv.semText(nltext, true);
+            SemText par = conv.semText(nltext, true, executor);
+
+            assertEquals(2, par.getSentences().size());
+            assertEquals(seq.getSentences().size(), par.getSentences().size());
+            for (int i = 0; i < seq.getSentences().size(); i++) {
+                Term seqTerm = seq.getSentences().get(i).getTerms().get(0);
+                Term parTerm = par.getSentences().get(i).getTerms().get(0);
+                assertEquals(seqTerm.getStart(), parTerm.getStart());
+                assertEquals(seqTerm.getEnd(), parTerm.getEnd());
+            }
+            assertEquals("e", par.getText(par.getSentences().get(1).getTerms().get(0)));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Parallel conversion of sentences with multiwords and named entities
+     * should give the same semtext of the sequential one, also when called
+     * from a thread of the executor itself.
+     *
+     * <pre>
+     * 012345
+     * ab cd   repeated for each sentence
+     * ab      multiword
+     *    cd   named entity
+     * </pre>
+     */
+    @Test
+    public void testParallelComplexTokens() throws Exception {
+        String sentenceText = "ab cd ";
+        final NLText nltext = new NLText(Strings.repeat(sentenceText, 10));
+        for (int i = 0; i < 10; i++) {
+            NLSentence sentence = new NLSentence(sentenceText.trim());
+            sentence.setProp(NLTextUnit.PFX, START_OFFSET, i * sentenceText.length());
+            sentence.setProp(NLTextUnit.PFX, END_OFFSET, i * sentenceText.length() + 5);
+
+            NLToken a = nlToken(0, 1, null);
+            NLToken b = nlToken(1, 2, null);
+            NLToken c = nlToken(3, 4, null);
+            NLToken d = nlToken(4, 5, null);
+            a.setText("a");
+            b.setText("b");
+            c.setText("c");
+            d.setText("d");
+            sentence.setTokens(Arrays.asList(a, b, c, d));
+
+            NLSenseMeaning sm1 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.3f);
+            NLSenseMeaning sm2 = nlSenseMeaning(TEST_LEMMA_2, TEST_DESCRIPTION_2, TEST_CONCEPT_2_ID, 0.7f);
+            NLMultiWord mw = multiword(i % 2 == 0 ? sm2 : null, a, b);
+            mw.setMeanings(Sets.newHashSet(sm1, sm2));
+            sentence.addMultiWord(mw);
+
+            NLEntityMeaning em1 = nlEntityMeaning(TEST_LEMMA_3, TEST_DESCRIPTION_3, TEST_ENTITY_1_ID, 0.6f);
+            NLNamedEntity ne = namedEntity(em1, c, d);
+            sentence.addNamedEntity(ne);
+
+            nltext.addSentence(sentence);
+        }
+
+        SemText seq = conv.semText(nltext, false);
+        assertEquals(10, seq.getSentences().size());
+        assertEquals(2, seq.getSentences().get(0).getTerms().size());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            assertEquals(seq, conv.semText(nltext, false, executor));
+
+            Future<SemText> nested = executor.submit(new Callable<SemText>() {
+                @Override
+                public SemText call() {
+                    return conv.semText(nltext, false, executor);
+                }
+            });
+            assertEquals(seq, nested.get(30, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Batch conversion should preserve document order, and null documents
+     * should become empty semtexts.
+     */
+    @Test
+    public void testSemTexts() {
+        List<NLText> nltexts = new ArrayList<NLText>();
+        for (int i = 0; i < 10; i++) {
+            nltexts.add(nlText("abc" + i, nlToken(0, 3, null,
+                    nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f))));
+        }
+        nltexts.add(null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<SemText> semTexts = conv.semTexts(nltexts, false, executor, 2);
+            assertEquals(11, semTexts.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("abc" + i, semTexts.get(i).getText());
+                assertEquals(1, semTexts.get(i).terms().size());
+            }
+            assertEquals("", semTexts.get(10).getText());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Batch conversion called from the only thread of the executor should
+     * convert the queued documents itself instead of waiting forever.
+     */
+    @Test
+    public void testSemTextsNested() throws Exception {
+        final List<NLText> nltexts = new ArrayList<NLText>();
+        for (int i = 0; i < 10; i++) {
+            nltexts.add(nlText("abc" + i, nlToken(0, 3, null,
+                    nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f))));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            Future<List<SemText>> nested = executor.submit(new Callable<List<SemText>>() {
+                @Override
+                public List<SemText> call() {
+                    return conv.semTexts(nltexts, false, executor, 3);
+                }
+            });
+            List<SemText> semTexts = nested.get(30, TimeUnit.SECONDS);
+            assertEquals(10, semTexts.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("abc" + i, semTexts.get(i).getText());
+                assertEquals(1, semTexts.get(i).terms().size());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Identical meanings in the same document should be converted once.
+     *
+     * <pre>
+     * 0123
+     * ab
+     * a       tok1
+     *  b      tok2
+     * </pre>
+     */
+    @Test
+    public void testMeaningsAreShared() {
+        NLSenseMeaning sm1 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f);
+        NLSenseMeaning sm2 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f);
+
+        NLText nltext = nlText("ab", nlToken(0, 1, sm1, sm1), nlToken(1, 2, sm2, sm2));
+
+        SemText st = conv.semText(nltext, false);
+
+        Term term1 = st.terms().get(0);
+        Term term2 = st.terms().get(1);
+        assertSame(term1.getSelectedMeaning(), term1.getMeanings().get(0));
+        assertSame(term1.getSelectedMeaning(), term2.getSelectedMeaning());
+        assertSame(term1.getMeanings().get(0), term2.getMeanings().get(0));
+    }
+
+    /**
+     * Meanings with the same id but different content in the same document
+     * should each keep their own content.
+     */
+    @Test
+    public void testMeaningsWithDifferentContentAreNotShared() {
+        NLSenseMeaning sm1 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f);
+        NLSenseMeaning sm2 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_2, TEST_CONCEPT_1_ID, 0.5f);
+        NLSenseMeaning sm3 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f);
+        sm3.setSummary("another summary");
+
+        NLText nltext = nlText("abc", nlToken(0, 1, sm1, sm1), nlToken(1, 2, sm2, sm2), nlToken(2, 3, sm3, sm3));
+
+        SemText st = conv.semText(nltext, false);
+
+        Meaning m1 = st.terms().get(0).getSelectedMeaning();
+        Meaning m2 = st.terms().get(1).getSelectedMeaning();
+        Meaning m3 = st.terms().get(2).getSelectedMeaning();
+        assertEquals(TEST_DESCRIPTION_1, m1.getDescription().string(Locale.ITALIAN));
+        assertEquals(TEST_DESCRIPTION_2, m2.getDescription().string(Locale.ITALIAN));
+        assertEquals("another summary",
+                ((NLMeaningMetadata) m3.getMetadata(NLTextConverter.NLTEXT_NAMESPACE)).getSummary());
+        assertNotSame(m1, m3);
+    }
+
+    /**
+     * Concepts seen in a previous document should be taken from the cache,
+     * unless their content changed.
+     */
+    @Test
+    public void testConceptCache() {
+        NLTextConverter cachingConv = NLTextConverter.builder()
+                .setConceptCacheSize(10)
+                .build();
+
+        NLSenseMeaning sm1 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f);
+        SemText st1 = cachingConv.semText(nlText("ab", nlToken(0, 1, null, sm1)), false);
+        assertEquals(0, cachingConv.getConceptCacheStats().hitCount());
+        assertEquals(1, cachingConv.getConceptCacheStats().missCount());
+
+        NLSenseMeaning sm2 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.7f);
+        SemText st2 = cachingConv.semText(nlText("ab", nlToken(0, 1, null, sm2)), false);
+        assertEquals(1, cachingConv.getConceptCacheStats().hitCount());
+
+        Meaning m1 = st1.terms().get(0).getMeanings().get(0);
+        Meaning m2 = st2.terms().get(0).getMeanings().get(0);
+        assertSame(m1.getName(), m2.getName());
+        assertEquals(0.7, m2.getProbability(), 0.0001);
+
+        NLSenseMeaning sm3 = nlSenseMeaning(TEST_LEMMA_2, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.7f);
+        SemText st3 = cachingConv.semText(nlText("ab", nlToken(0, 1, null, sm3)), false);
+        assertEquals(2, cachingConv.getConceptCacheStats().missCount());
+        assertEquals(TEST_LEMMA_2, st3.terms().get(0).getMeanings().get(0).getName().string(Locale.ROOT));
+
+        assertEquals(0, conv.getConceptCacheStats().requestCount());
+    }
+
+    /**
+     * Concepts taken from the cache should report the same issues found when
+     * they were first converted
+     */
+    @Test
+    public void testConceptCacheDiagnostics() {
+        NLTextConverter cachingConv = NLTextConverter.builder()
+                .setConceptCacheSize(10)
+                .build();
+
+        // no gloss map
+        NLSenseMeaning sm1 = new NLSenseMeaning();
+        sm1.setLemma(TEST_LEMMA_1);
+        sm1.setConceptId(TEST_CONCEPT_1_ID);
+        sm1.setProbability(0.5f);
+        ConversionDiagnostics missDiag = ConversionDiagnostics.of();
+        cachingConv.semText(nlText("ab", nlToken(0, 1, null, sm1)), false, missDiag);
+        assertEquals(1, cachingConv.getConceptCacheStats().missCount());
+        assertEquals(1, missDiag.getCount(ConversionDiagnostics.Issue.MISSING_GLOSS));
+
+        // no gloss map
+        NLSenseMeaning sm2 = new NLSenseMeaning();
+        sm2.setLemma(TEST_LEMMA_1);
+        sm2.setConceptId(TEST_CONCEPT_1_ID);
+        sm2.setProbability(0.7f);
+        ConversionDiagnostics hitDiag = ConversionDiagnostics.of();
+        cachingConv.semText(nlText("ab", nlToken(0, 1, null, sm2)), false, hitDiag);
+        assertEquals(1, cachingConv.getConceptCacheStats().hitCount());
+        assertEquals(missDiag.toString(), hitDiag.toString());
+        assertEquals(missDiag.getSamples(ConversionDiagnostics.Issue.MISSING_GLOSS),
+                hitDiag.getSamples(ConversionDiagnostics.Issue.MISSING_GLOSS));
+    }
+
+    /**
+     * A complex token followed by a simple token should become two terms
+     *
+     * <pre>
+     * 012345
+     * abcde
+     * ab       tok1
+     *  bc      tok2
+     *    de    tok3
+     * abc      named entity
+     * </pre>
+     */
+    @Test
+    public void testComplexTokenThenToken() {
+        NLEntityMeaning entityM = nlEntityMeaning(TEST_LEMMA_1,
+                TEST_DESCRIPTION_1,
+                TEST_ENTITY_1_ID,
+                0.2f);
+        NLSenseMeaning senseM = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f);
+
+        NLToken tok1 = nlToken(0, 2, null);
+        NLToken tok2 = nlToken(1, 3, null);
+        NLToken tok3 = nlToken(3, 5, senseM);
+
+        NLText nltext = nlText("abcde", tok1, tok2, tok3);
+        nltext.getSentences().get(0).addNamedEntity(namedEntity(entityM, tok1, tok2));
+
+        SemText st = conv.semText(nltext, false);
+
+        assertEquals(2, st.terms().size());
+        assertEquals("abc", st.getText(st.terms().get(0)));
+        assertEquals(MeaningKind.ENTITY, st.terms().get(0).getSelectedMeaning().getKind());
+        assertEquals("de", st.getText(st.terms().get(1)));
+        assertEquals(MeaningKind.CONCEPT, st.terms().get(1).getSelectedMeaning().getKind());
+    }
+
+    @Test
+    public void testMeaningPruning() {
+        NLSenseMeaning sm1 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.1f);
+        NLSenseMeaning sm2 = nlSenseMeaning(TEST_LEMMA_2, TEST_DESCRIPTION_2, TEST_CONCEPT_2_ID, 0.5f);
+        NLSenseMeaning sm3 = nlSenseMeaning(TEST_LEMMA_3, TEST_DESCRIPTION_3, TEST_CONCEPT_3_ID, 0.4f);
+
+        NLTextConverter topConv = NLTextConverter.builder().setMaxMeanings(1).build();
+        Term term = topConv.semText(nlText("ab", nlToken(0, 1, null, sm1, sm2, sm3)), false).terms().get(0);
+        assertEquals(1, term.getMeanings().size());
+        assertEquals(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_2_ID), term.getMeanings().get(0).getId());
+
+        // selected meaning is kept even if least probable
+        term = topConv.semText(nlText("ab", nlToken(0, 1, sm1, sm1, sm2, sm3)), false).terms().get(0);
+        assertEquals(1, term.getMeanings().size());
+        assertEquals(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_1_ID), term.getMeanings().get(0).getId());
+
+        // also when the selected meaning is a copy of the candidate, as after a json round trip
+        NLSenseMeaning sm1Copy = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.1f);
+        term = topConv.semText(nlText("ab", nlToken(0, 1, sm1Copy, sm1, sm2, sm3)), false).terms().get(0);
+        assertEquals(1, term.getMeanings().size());
+        assertEquals(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_1_ID), term.getMeanings().get(0).getId());
+        assertEquals(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_1_ID), term.getSelectedMeaning().getId());
+
+        // the kept candidate is not replaced by the selected copy, so it keeps its own probability
+        NLSenseMeaning sm1Likely = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.9f);
+        NLTextConverter topTwoConv = NLTextConverter.builder().setMaxMeanings(2).build();
+        term = topTwoConv.semText(nlText("ab", nlToken(0, 1, sm1Likely, sm1, sm2, sm3)), false).terms().get(0);
+        assertEquals(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_1_ID), term.getSelectedMeaning().getId());
+        Set<String> ids = new HashSet<String>();
+        boolean candidateKept = false;
+        for (Meaning m : term.getMeanings()) {
+            ids.add(m.getId());
+            if (conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_1_ID).equals(m.getId())
+                    && Math.abs(m.getProbability() - 0.1f) < 0.0001) {
+                candidateKept = true;
+            }
+        }
+        assertTrue(candidateKept);
+        assertTrue(ids.contains(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_2_ID)));
+        assertFalse(ids.contains(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_3_ID)));
+
+        NLTextConverter floorConv = NLTextConverter.builder().setMinProbability(0.3).build();
+        term = floorConv.semText(nlText("ab", nlToken(0, 1, null, sm1, sm2, sm3)), false).terms().get(0);
+        assertEquals(2, term.getMeanings().size());
+        assertEquals(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_2_ID), term.getMeanings().get(0).getId());
+        assertEquals(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_3_ID), term.getMeanings().get(1).getId());
+    }
+
+    @Test
+    public void testMetadataMode() {
+        NLSenseMeaning sm = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f);
+
+        NLTextConverter leanConv = NLTextConverter.builder().setMetadataMode(MetadataMode.NONE).build();
+        Term term = leanConv.semText(nlText("ab", nlToken(0, 1, sm, sm)), false).terms().get(0);
+        assertFalse(term.hasMetadata(NLTextConverter.NLTEXT_NAMESPACE));
+        assertFalse(term.getSelectedMeaning().hasMetadata(NLTextConverter.NLTEXT_NAMESPACE));
+        assertEquals(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_1_ID), term.getSelectedMeaning().getId());
+
+        NLTextConverter termConv = NLTextConverter.builder().setMetadataMode(MetadataMode.TERM_ONLY).build();
+        term = termConv.semText(nlText("ab", nlToken(0, 1, sm, sm)), false).terms().get(0);
+        assertTrue(term.hasMetadata(NLTextConverter.NLTEXT_NAMESPACE));
+        assertFalse(term.getSelectedMeaning().hasMetadata(NLTextConverter.NLTEXT_NAMESPACE));
+
+        NLTextConverter meaningConv = NLTextConverter.builder().setMetadataMode(MetadataMode.MEANING_ONLY).build();
+        term = meaningConv.semText(nlText("ab", nlToken(0, 1, sm, sm)), false).terms().get(0);
+        assertFalse(term.hasMetadata(NLTextConverter.NLTEXT_NAMESPACE));
+        assertTrue(term.getSelectedMeaning().hasMetadata(NLTextConverter.NLTEXT_NAMESPACE));
+    }
+
+    @Test
+    public void testDiagnostics() {
+        NLSenseMeaning sm = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f);
+        sm.setLemma(null);
+        NLText nltext = nlText("abc", nlToken(0, 1, sm, sm), nlToken(1, 2, null), nlToken(2, 3, null));
+
+        ConversionDiagnostics diag = ConversionDiagnostics.of(1, 0);
+        SemText st = conv.semText(nltext, false, diag);
+
+        assertEquals(3, st.terms().size());
+        assertEquals(1, diag.getCount(ConversionDiagnostics.Issue.INVALID_LEMMA));
+        assertEquals(1, diag.getCount(ConversionDiagnostics.Issue.MISSING_LANGUAGE));
+        assertTrue(diag.getCount(ConversionDiagnostics.Issue.NULL_STRING) > 1);
+        assertEquals(1, diag.getSamples(ConversionDiagnostics.Issue.NULL_STRING).size());
+        assertEquals(0, diag.getSamples(ConversionDiagnostics.Issue.SKIPPED_TOKEN).size());
+    }
+
     @Test
     public void testMeaning() {
         NLSenseMeaning meaning = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.3f);
 
     }
 
+    @Test
+    public void testSharedConverters() {
+        assertSame(NLTextConverter.of(), NLTextConverter.of(UrlMapper.of()));
+        UrlMapper mapper = UrlMapper.of("http://entitybase.org");
+        assertSame(NLTextConverter.of(mapper), NLTextConverter.of(UrlMapper.of("http://entitybase.org/")));
+        assertTrue(NLTextConverter.of(mapper) != NLTextConverter.of());
+    }
+
+    /**
+     * Direct conversion to SemanticString gives the same result as going
+     * through SemText
+     *
+     * <pre>
+     * 0123456
+     * abc de
+     * a        tok1
+     *   c      tok2
+     * m m      multiword
+     *     de   tok3
+     * </pre>
+     */
+    @Test
+    public void testSemanticString() {
+        NLSenseMeaning sm1 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.2f);
+        NLSenseMeaning sm2 = nlSenseMeaning(TEST_LEMMA_2, TEST_DESCRIPTION_2, TEST_CONCEPT_2_ID, 0.7f);
+        NLSenseMeaning sm3 = nlSenseMeaning(TEST_LEMMA_3, TEST_DESCRIPTION_3, TEST_CONCEPT_3_ID, 0.3f);
+        NLEntityMeaning em1 = nlEntityMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_ENTITY_1_ID, 0.6f);
+
+        NLToken tok1 = nlToken(0, 1, null);
+        NLToken tok2 = nlToken(2, 3, null);
+        NLToken tok3 = nlToken(4, 6, em1, em1, sm3);
+        tok3.setDerivedStem("d");
+        tok3.setDerivedLemmas(ImmutableSet.of("d", "dee"));
+
+        NLText nltext = nlText("abc de", tok1, tok2, tok3);
+        NLMultiWord mw = multiword(sm2, tok1, tok2);
+        mw.setMeanings(Sets.newHashSet(sm1, sm2));
+        nltext.getSentences().get(0).addMultiWord(mw);
+
+        for (MetadataMode mode : MetadataMode.values()) {
+            NLTextConverter converter = NLTextConverter.builder().setMetadataMode(mode).build();
+            SemanticString expected = SemanticStringConverter.of(converter.getUrlMapper())
+                    .semanticString(converter.semText(nltext, false));
+            SemanticString semanticString = converter.semanticString(nltext);
+            assertEquals(2, semanticString.getComplexConcepts().size());
+            assertSemanticStringEquals(expected, semanticString);
+        }
+
+        ConversionDiagnostics diag = ConversionDiagnostics.of();
+        assertEquals("", conv.semanticString(null, diag).getText());
+        assertEquals(1, diag.getCount(ConversionDiagnostics.Issue.SKIPPED_DOCUMENT));
+    }
+
+    /**
+     * Streaming conversion from json gives the same SemText as converting the
+     * deserialized NLText, whatever the order of NLText properties.
+     */
+    @Test
+    public void testSemTextFromJson() throws IOException {
+        NLSenseMeaning sm1 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.4f);
+        NLText nltext = nlText("abc", nlToken(0, 2, sm1, sm1));
+        nltext.setLanguage("it");
+        SemText expected = conv.semText(nltext, false);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonFactory jsonFactory = objectMapper.getFactory();
+        NLTextJsonStreamConverter streamConv = NLTextJsonStreamConverter.of(conv, objectMapper);
+
+        String json = objectMapper.writeValueAsString(nltext);
+        assertEquals(expected, streamConv.semText(jsonFactory.createParser(json), false));
+
+        String sentencesFirst = "{\"sentences\":["
+                + objectMapper.writeValueAsString(nltext.getSentences().get(0))
+                + ", null],\"other\":{\"a\":[1]},\"text\":\"abc\",\"language\":\"it\"}";
+        ConversionDiagnostics diag = ConversionDiagnostics.of();
+        assertEquals(expected, streamConv.semText(jsonFactory.createParser(sentencesFirst), false, diag));
+        assertEquals(1, diag.getCount(ConversionDiagnostics.Issue.SKIPPED_SENTENCE));
+
+        assertEquals(SemText.of(), streamConv.semText(jsonFactory.createParser("null"), false));
+    }
+
+    /**
+     * Lazy sentences match the converted ones, skip sentences without offsets
+     * and are converted only once
+     */
+    @Test
+    public void testLazySentences() {
+        NLText nltext = threeSentences(false, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID);
+
+        SemText semText = conv.semText(nltext, true);
+        List<Sentence> lazy = conv.lazySentences(nltext, true);
+
+        assertEquals(2, lazy.size());
+        assertEquals(semText.getSentences().get(1), lazy.get(1));
+        assertSame(lazy.get(1), lazy.get(1));
+        assertEquals(semText.getSentences(), lazy);
+
+        assertTrue(conv.lazySentences(null, true).isEmpty());
+    }
+
+    /**
+     * Incremental conversion reuses unchanged sentences and gives the same
+     * result as a full conversion
+     */
+    @Test
+    public void testIncrementalSemText() {
+        NLText previousNLText = threeSentences(true, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID);
+        SemText previous = conv.semText(previousNLText, false);
+
+        NLText nltext = threeSentences(true, TEST_CONCEPT_1_ID, TEST_CONCEPT_2_ID, TEST_CONCEPT_1_ID);
+        SemText incremental = conv.semText(nltext, false, previousNLText, previous);
+
+        assertEquals(conv.semText(nltext, false), incremental);
+        assertSame(previous.getSentences().get(0), incremental.getSentences().get(0));
+        assertFalse(previous.getSentences().get(1).equals(incremental.getSentences().get(1)));
+        assertSame(previous.getSentences().get(2), incremental.getSentences().get(2));
+
+        SemText unchanged = conv.semText(previousNLText, false, previousNLText, previous);
+        assertEquals(previous, unchanged);
+        assertSame(previous.getSentences().get(1), unchanged.getSentences().get(1));
+
+        assertEquals(conv.semText(nltext, false), conv.semText(nltext, false, null, SemText.of()));
+    }
+
+    /**
+     * Changing only the gloss of a concept changes the description of the
+     * converted meaning, so the sentence must be converted again
+     */
+    @Test
+    public void testIncrementalSemTextChangedGloss() {
+        NLText previousNLText = threeSentences(true, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID);
+        SemText previous = conv.semText(previousNLText, false);
+
+        NLText nltext = threeSentences(true, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID, TEST_CONCEPT_1_ID);
+        Map<String, String> glosses = new HashMap<String, String>();
+        glosses.put("it", TEST_DESCRIPTION_2);
+        NLMeaning meaning = nltext.getSentences().get(1).getTokens().get(0).getMeanings().iterator().next();
+        meaning.setProp(NLTextUnit.PFX, NLTextConverter.GLOSS_MAP, glosses);
+
+        SemText incremental = conv.semText(nltext, false, previousNLText, previous);
+
+        assertEquals(conv.semText(nltext, false), incremental);
+        assertSame(previous.getSentences().get(0), incremental.getSentences().get(0));
+        assertNotSame(previous.getSentences().get(1), incremental.getSentences().get(1));
+        assertEquals(TEST_DESCRIPTION_2, incremental.getSentences().get(1).getTerms().get(0)
+                .getMeanings().get(0).getDescription().string(Locale.ITALIAN));
+        assertSame(previous.getSentences().get(2), incremental.getSentences().get(2));
+    }
+
+    /**
+     * Returns an NLText with tokens a, b, c, d grouped in two multiwords with
+     * the same meaning, either ab and cd or ac and bd.
+     */
+    private static NLText twoMultiwords(boolean regrouped) {
+        NLToken a = nlToken(0, 1, null);
+        NLToken b = nlToken(1, 2, null);
+        NLToken c = nlToken(3, 4, null);
+        NLToken d = nlToken(4, 5, null);
+        NLText nltext = nlText("ab cd", a, b, c, d);
+        nltext.setLanguage("it");
+
+        NLMultiWord mw1 = regrouped ? multiword(null, a, c) : multiword(null, a, b);
+        NLMultiWord mw2 = regrouped ? multiword(null, b, d) : multiword(null, c, d);
+        mw1.setMeanings(Sets.newHashSet(nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f)));
+        mw2.setMeanings(Sets.newHashSet(nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f)));
+        nltext.getSentences().get(0).addMultiWord(mw1);
+        nltext.getSentences().get(0).addMultiWord(mw2);
+        return nltext;
+    }
+
+    /**
+     * Moving multiwords to different tokens with the same meanings changes
+     * the sentence, so it must be converted again
+     */
+    @Test
+    public void testIncrementalSemTextRegroupedTokens() {
+        NLText previousNLText = twoMultiwords(false);
+        SemText previous = conv.semText(previousNLText, false);
+
+        NLText nltext = twoMultiwords(true);
+        SemText incremental = conv.semText(nltext, false, previousNLText, previous);
+
+        assertEquals(conv.semText(nltext, false), incremental);
+        assertNotSame(previous.getSentences().get(0), incremental.getSentences().get(0));
+
+        assertSame(previous.getSentences().get(0),
+                conv.semText(twoMultiwords(false), false, previousNLText, previous).getSentences().get(0));
+    }
+
+    /**
+     * Visiting reports the same terms and meanings SemText conversion gives
+     */
+    @Test
+    public void testVisit() {
+        NLSenseMeaning sm1 = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.2f);
+        NLSenseMeaning sm2 = nlSenseMeaning(TEST_LEMMA_2, TEST_DESCRIPTION_2, TEST_CONCEPT_2_ID, 0.7f);
+        NLEntityMeaning em1 = nlEntityMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_ENTITY_1_ID, 0.6f);
+        NLEntityMeaning em1Copy = nlEntityMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_ENTITY_1_ID, 0.6f);
+
+        NLToken tok1 = nlToken(0, 1, null);
+        NLToken tok2 = nlToken(2, 3, null);
+        NLToken tok3 = nlToken(4, 6, em1, em1, em1Copy, sm1);
+        NLToken tok4 = nlToken(7, 8, null);
+
+        NLText nltext = nlText("abc de f", tok1, tok2, tok3, tok4);
+        NLMultiWord mw = multiword(null, tok1, tok2);
+        mw.setMeanings(Sets.newHashSet(sm1, sm2));
+        nltext.getSentences().get(0).addMultiWord(mw);
+        nltext.getSentences().get(0).addNamedEntity(namedEntity(null, tok4));
+
+        final List<String> events = new ArrayList();
+        conv.visit(nltext, false, new NLTextVisitor() {
+
+            @Override
+            public void onSentence(int startOffset, int endOffset) {
+                events.add("s " + startOffset + " " + endOffset);
+            }
+
+            @Override
+            public void onTerm(int startOffset, int endOffset, MeaningStatus meaningStatus, MeaningKind selectedKind, long selectedId, double selectedProbability) {
+                events.add("t " + startOffset + " " + endOffset + " " + meaningStatus + " " + selectedKind + " " + selectedId);
+            }
+
+            @Override
+            public void onMeaning(MeaningKind kind, long id, double probability) {
+                events.add("m " + kind + " " + id);
+            }
+        });
+
+        assertEquals("s 0 8", events.get(0));
+        assertEquals("t 0 3 TO_DISAMBIGUATE UNKNOWN " + NLTextVisitor.NO_ID, events.get(1));
+        // meanings come by decreasing probability, without duplicates
+        assertEquals("m CONCEPT " + TEST_CONCEPT_2_ID, events.get(2));
+        assertEquals("m CONCEPT " + TEST_CONCEPT_1_ID, events.get(3));
+        assertEquals("t 4 6 SELECTED ENTITY " + TEST_ENTITY_1_ID, events.get(4));
+        assertEquals("m ENTITY " + TEST_ENTITY_1_ID, events.get(5));
+        assertEquals("m CONCEPT " + TEST_CONCEPT_1_ID, events.get(6));
+        assertEquals("t 7 8 TO_DISAMBIGUATE UNKNOWN " + NLTextVisitor.NO_ID, events.get(7));
+        assertEquals("m ENTITY " + NLTextVisitor.NO_ID, events.get(8));
+        assertEquals(9, events.size());
+
+        SemText semText = conv.semText(nltext, false);
+        assertEquals(3, semText.terms().size());
+        assertEquals(2, semText.terms().get(0).getMeanings().size());
+        assertEquals(1, semText.terms().get(2).getMeanings().size());
+        assertEquals(MeaningKind.ENTITY, semText.terms().get(2).getMeanings().get(0).getKind());
+
+        try {
+            conv.visit(nltext, false, new NLTextVisitor() {
+
+                @Override
+                public void onMeaning(MeaningKind kind, long id, double probability) {
+                    throw new IllegalStateException("stop");
+                }
+            });
+            Assert.fail();
+        }
+        catch (IllegalStateException ex) {
+            assertEquals("stop", ex.getMessage());
+        }
+    }
+
+    /**
+     * A sentence failing conversion after some of its terms were found is
+     * dropped by semText and never reaches the visitor
+     */
+    @Test
+    public void testVisitFailingSentence() {
+        final NLToken tok1 = nlToken(0, 1, null,
+                nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID, 0.5f));
+        final NLToken tok2 = nlToken(2, 3, null,
+                nlSenseMeaning(TEST_LEMMA_2, TEST_DESCRIPTION_2, TEST_CONCEPT_2_ID, 0.5f));
+        tok1.setText("a");
+        tok2.setText("c");
+
+        NLText nltext = new NLText("abc");
+        NLSentence sentence = new NLSentence("abc") {
+
+            private static final long serialVersionUID = 1L;
+
+            /**
+             * Returns tokens which break once the first term is found
+             */
+            @Override
+            public List<NLToken> getTokens() {
+                return new ArrayList<NLToken>(Arrays.asList(tok1, tok2)) {
+
+                    private static final long serialVersionUID = 1L;
+
+                    private int firstTokenReads = 0;
+
+                    @Override
+                    public NLToken get(int index) {
+                        if (index == 0) {
+                            firstTokenReads++;
+                        }
+                        return super.get(index);
+                    }
+
+                    @Override
+                    public int size() {
+                        // first read is for indexing, second for the first term
+                        if (firstTokenReads >= 2) {
+                            throw new IllegalStateException("Broken tokens");
+                        }
+                        return super.size();
+                    }
+                };
+            }
+        };
+        sentence.setProp(NLTextUnit.PFX, START_OFFSET, 0);
+        sentence.setProp(NLTextUnit.PFX, END_OFFSET, 3);
+        nltext.addSentence(sentence);
+
+        ConversionDiagnostics diag = ConversionDiagnostics.of();
+        assertTrue(conv.semText(nltext, false, diag).getSentences().isEmpty());
+        assertEquals(1, diag.getCount(ConversionDiagnostics.Issue.SKIPPED_SENTENCE));
+
+        final List<String> events = new ArrayList<String>();
+        diag = ConversionDiagnostics.of();
+        conv.visit(nltext, false, new NLTextVisitor() {
+
+            @Override
+            public void onSentence(int startOffset, int endOffset) {
+                events.add("s");
+            }
+
+            @Override
+            public void onTerm(int startOffset, int endOffset, MeaningStatus meaningStatus, MeaningKind selectedKind, long selectedId, double selectedProbability) {
+                events.add("t");
+            }
+
+            @Override
+            public void onMeaning(MeaningKind kind, long id, double probability) {
+                events.add("m");
+            }
+        }, diag);
+        assertTrue(events.isEmpty());
+        assertEquals(1, diag.getCount(ConversionDiagnostics.Issue.SKIPPED_SENTENCE));
+    }
+
+    /**
+     * Sentences with more events and meanings than the visitor initially
+     * buffers should be visited whole, with meanings sorted
+     */
+    @Test
+    public void testVisitLargeSentence() {
+        NLToken[] tokens = new NLToken[20];
+        for (int i = 0; i < tokens.length; i++) {
+            NLMeaning[] meanings = new NLMeaning[20];
+            for (int j = 0; j < meanings.length; j++) {
+                meanings[j] = nlSenseMeaning(TEST_LEMMA_1, TEST_DESCRIPTION_1, TEST_CONCEPT_1_ID + j, (j + 1) / 100.0f);
+            }
+            tokens[i] = nlToken(i, i + 1, null, meanings);
+        }
+        NLText nltext = nlText(Strings.repeat("a", tokens.length), tokens);
+
+        final List<Double> probabilities = new ArrayList<Double>();
+        final int[] counts = new int[3];
+        conv.visit(nltext, false, new NLTextVisitor() {
+
+            @Override
+            public void onSentence(int startOffset, int endOffset) {
+                counts[0]++;
+            }
+
+            @Override
+            public void onTerm(int startOffset, int endOffset, MeaningStatus meaningStatus, MeaningKind selectedKind, long selectedId, double selectedProbability) {
+                assertEquals(counts[1], startOffset);
+                counts[1]++;
+                probabilities.clear();
+            }
+
+            @Override
+            public void onMeaning(MeaningKind kind, long id, double probability) {
+                if (!probabilities.isEmpty()) {
+                    assertTrue(probabilities.get(probabilities.size() - 1) > probability);
+                }
+                probabilities.add(probability);
+                counts[2]++;
+            }
+        });
+
+        assertEquals(1, counts[0]);
+        assertEquals(20, counts[1]);
+        assertEquals(400, counts[2]);
+    }
+
+    private static void assertSemanticStringEquals(SemanticString expected, SemanticString actual) {
+        assertEquals(expected.getText(), actual.getText());
+        assertEquals(expected.getComplexConcepts().size(), actual.getComplexConcepts().size());
+        for (int i = 0; i < expected.getComplexConcepts().size(); i++) {
+            List<SemanticTerm> expectedTerms = expected.getComplexConcepts().get(i).getTerms();
+            List<SemanticTerm> actualTerms = actual.getComplexConcepts().get(i).getTerms();
+            assertEquals(expectedTerms.size(), actualTerms.size());
+            for (int j = 0; j < expectedTerms.size(); j++) {
+                SemanticTerm e = expectedTerms.get(j);
+                SemanticTerm a = actualTerms.get(j);
+                assertEquals(e.getOffset(), a.getOffset());
+                assertEquals(e.getText(), a.getText());
+                assertEquals(e.getConceptTerms().size(), a.getConceptTerms().size());
+                for (int k = 0; k < e.getConceptTerms().size(); k++) {
+                    assertEquals(e.getConceptTerms().get(k).getValue(), a.getConceptTerms().get(k).getValue());
+                    assertEquals(e.getConceptTerms().get(k).getWeight(), a.getConceptTerms().get(k).getWeight());
+                }
+                assertEquals(e.getInstanceTerms().size(), a.getInstanceTerms().size());
+                for (int k = 0; k < e.getInstanceTerms().size(); k++) {
+                    assertEquals(e.getInstanceTerms().get(k).getValue(), a.getInstanceTerms().get(k).getValue());
+                    assertEquals(e.getInstanceTerms().get(k).getWeight(), a.getInstanceTerms().get(k).getWeight());
+                }
+                assertEquals(e.getStringTerms().size(), a.getStringTerms().size());
+                for (int k = 0; k < e.getStringTerms().size(); k++) {
+                    assertEquals(e.getStringTerms().get(k).getValue(), a.getStringTerms().get(k).getValue());
+                    assertEquals(e.getStringTerms().get(k).getWeight(), a.getStringTerms().get(k).getWeight());
+                }
+            }
+        }
+    }
+
 }
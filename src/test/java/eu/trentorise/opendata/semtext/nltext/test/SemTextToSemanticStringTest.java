@@ -24,12 +24,15 @@ import eu.trentorise.opendata.semtext.MeaningStatus;
 import eu.trentorise.opendata.semtext.SemText;
 import eu.trentorise.opendata.semtext.Sentence;
 import eu.trentorise.opendata.semtext.Term;
+import eu.trentorise.opendata.semtext.nltext.ConversionDiagnostics;
+import eu.trentorise.opendata.semtext.nltext.NLMeaningMetadata;
 import eu.trentorise.opendata.semtext.nltext.NLTermMetadata;
 import eu.trentorise.opendata.semtext.nltext.NLTextConverter;
 import eu.trentorise.opendata.semtext.nltext.SemanticStringConverter;
 import eu.trentorise.opendata.disiclient.UrlMapper;
 import it.unitn.disi.sweb.webapi.model.eb.sstring.ComplexConcept;
 import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticString;
+import it.unitn.disi.sweb.webapi.model.eb.sstring.ConceptTerm;
 import it.unitn.disi.sweb.webapi.model.eb.sstring.SemanticTerm;
 import java.util.ArrayList;
 import java.util.List;
@@ -179,6 +182,33 @@ public class SemTextToSemanticStringTest {
 
     }
     
+    /**
+     * Meanings with ids the url mapper can't parse are skipped and reported.
+     */
+    @Test
+    public void testInvalidMeaningId() {
+        Meaning selMeaning = Meaning.of("http://other.org/instances/1", MeaningKind.ENTITY, 1);
+        Meaning otherMeaning = Meaning.of(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_ID_1), MeaningKind.CONCEPT, 0.5);
+        Meaning badMeaning = Meaning.of("bla", MeaningKind.CONCEPT, 0.5);
+
+        SemText semText = SemText.of(
+                Locale.ITALIAN,
+                "c",
+                Term.of(
+                        0,
+                        1,
+                        MeaningStatus.SELECTED,
+                        selMeaning,
+                        ImmutableList.of(otherMeaning, badMeaning)));
+        ConversionDiagnostics diag = ConversionDiagnostics.of();
+        SemanticString semanticString = conv.semanticString(semText, diag);
+        SemanticTerm semTerm = semanticString.getComplexConcepts().get(0).getTerms().get(0);
+        assertEquals(0, semTerm.getInstanceTerms().size());
+        assertEquals(1, semTerm.getConceptTerms().size());
+        assertEquals(TEST_CONCEPT_ID_1, (long) semTerm.getConceptTerms().get(0).getValue());
+        assertEquals(2, diag.getCount(ConversionDiagnostics.Issue.INVALID_MEANING_ID));
+    }
+
     /**
      * One Term, no selected meaning and one other meaning with empty id.
      */
@@ -202,6 +232,82 @@ public class SemTextToSemanticStringTest {
         assertEquals(0, semanticString.getComplexConcepts().get(0).getTerms().get(0).getInstanceTerms().size());
         assertEquals(1, semanticString.getComplexConcepts().get(0).getTerms().get(0).getStringTerms().size());        
     }
-    
+
+    /**
+     * Derived lemmas equal to stems give a single string term.
+     */
+    @Test
+    public void testDuplicateStringTerms() {
+        SemText semText = SemText.of(
+                Locale.ITALIAN,
+                "cats",
+                Term.of(0,
+                        4,
+                        MeaningStatus.NOT_SURE,
+                        null,
+                        ImmutableList.<Meaning>of(),
+                        ImmutableMap.of(NLTextConverter.NLTEXT_NAMESPACE,
+                                NLTermMetadata.of(ImmutableList.of("cat", "ca"),
+                                        ImmutableList.of("cat")))));
+        SemanticTerm semTerm = conv.semanticString(semText).getComplexConcepts().get(0).getTerms().get(0);
+        assertEquals("cats", semTerm.getText());
+        assertEquals(2, semTerm.getStringTerms().size());
+        assertEquals("cat", semTerm.getStringTerms().get(0).getValue());
+        assertEquals("ca", semTerm.getStringTerms().get(1).getValue());
+    }
+
+    /**
+     * Knowledge base ids in NLMeaningMetadata are used instead of parsing urls
+     * only if the url is the one of the mapper for that id
+     */
+    @Test
+    public void testKbId() {
+        Meaning concept = Meaning.builder()
+                .setId(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_ID_2))
+                .setKind(MeaningKind.CONCEPT)
+                .setProbability(0.4)
+                .setMetadata(ImmutableMap.of(NLTextConverter.NLTEXT_NAMESPACE,
+                        NLMeaningMetadata.of("", "", TEST_CONCEPT_ID_2)))
+                .build();
+        // url was changed after conversion, the stale id must not be used
+        Meaning retargeted = Meaning.builder()
+                .setId(conv.getUrlMapper().conceptIdToUrl(TEST_CONCEPT_ID_1))
+                .setKind(MeaningKind.CONCEPT)
+                .setProbability(0.3)
+                .setMetadata(ImmutableMap.of(NLTextConverter.NLTEXT_NAMESPACE,
+                        NLMeaningMetadata.of("", "", TEST_CONCEPT_ID_2)))
+                .build();
+        // url of another mapper is parsed and rejected
+        Meaning foreign = Meaning.builder()
+                .setId("http://other.org/concepts/" + TEST_CONCEPT_ID_2)
+                .setKind(MeaningKind.CONCEPT)
+                .setProbability(0.2)
+                .setMetadata(ImmutableMap.of(NLTextConverter.NLTEXT_NAMESPACE,
+                        NLMeaningMetadata.of("", "", TEST_CONCEPT_ID_2)))
+                .build();
+        Meaning entity = Meaning.of(conv.getUrlMapper().entityIdToUrl(TEST_ENTITY_ID_1), MeaningKind.ENTITY, 0.6);
+
+        SemText semText = SemText.of(
+                Locale.ITALIAN,
+                "c",
+                Term.of(0,
+                        1,
+                        MeaningStatus.TO_DISAMBIGUATE,
+                        null,
+                        ImmutableList.of(concept, retargeted, foreign, entity)));
+        ConversionDiagnostics diag = ConversionDiagnostics.of();
+        SemanticTerm semTerm = conv.semanticString(semText, diag).getComplexConcepts().get(0).getTerms().get(0);
+        assertEquals(2, semTerm.getConceptTerms().size());
+        for (ConceptTerm conceptTerm : semTerm.getConceptTerms()) {
+            if (conceptTerm.getWeight() > 0.35) {
+                assertEquals(TEST_CONCEPT_ID_2, (long) conceptTerm.getValue());
+            } else {
+                assertEquals(TEST_CONCEPT_ID_1, (long) conceptTerm.getValue());
+            }
+        }
+        assertEquals(1, semTerm.getInstanceTerms().size());
+        assertEquals(TEST_ENTITY_ID_1, (long) semTerm.getInstanceTerms().get(0).getValue());
+        assertEquals(1, diag.getCount(ConversionDiagnostics.Issue.INVALID_MEANING_ID));
+    }
 
 }
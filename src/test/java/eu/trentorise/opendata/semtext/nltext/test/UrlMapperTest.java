@@ -14,10 +14,19 @@
  * limitations under the License.
  */
 package eu.trentorise.opendata.semtext.nltext.test;
+import eu.trentorise.opendata.commons.TodUtils;
+import eu.trentorise.opendata.disiclient.ParsedUrl;
+import eu.trentorise.opendata.disiclient.UrlKind;
 import eu.trentorise.opendata.disiclient.UrlMapper;
+import java.util.Arrays;
+import java.util.BitSet;
 import org.junit.After;
 import org.junit.Assert;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -74,6 +83,81 @@ public class UrlMapperTest {
         }
     }
 
+    @Test
+    public void testAttrDefUrlToConceptId() {
+        String prefix = BASE + "/attributedefinitions/1?";
+        assertEquals(2L, m.attrDefUrlToConceptId(prefix + "a=b&debugConceptId=2&c"));
+        assertEquals(-1L, m.attrDefUrlToConceptId(prefix + "debugConceptId=-5"));
+        // handled by the full parameter parser
+        assertEquals(2L, m.attrDefUrlToConceptId(prefix + "debugConceptId=%32"));
+        assertEquals(2L, m.attrDefUrlToConceptId(prefix + "debugConceptId=2#frag"));
+
+        String[] invalidUrls = {
+            prefix + "debugConceptId=2&debugConceptId=2",
+            prefix + "debugConceptId=2&debugConceptId=3",
+            prefix + "debugConceptIdx=2",
+            prefix + "debugConceptId=",
+            prefix + "debugConceptId=2a",
+            BASE + "/attributedefinitions/1"};
+
+        for (String url : invalidUrls) {
+            try {
+                m.attrDefUrlToConceptId(url);
+                Assert.fail("Should have failed on url " + url);
+            }
+            catch (IllegalArgumentException ex) {
+
+            }
+        }
+
+        try {
+            m.attrDefUrlToConceptId(prefix + "debugConceptId=2&debugConceptId=3");
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+            assertEquals("Expected one debugConceptId, found 2 instead.", ex.getMessage());
+        }
+
+        // a bare key is counted by the full parser
+        try {
+            m.attrDefUrlToConceptId(prefix + "debugConceptId&debugConceptId=2");
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+            assertEquals("Expected one debugConceptId, found 2 instead.", ex.getMessage());
+        }
+
+        // unknown protocols fail as they do in the full parser
+        String foreignUrl = "foo://host/attributedefinitions/1?debugConceptId=3";
+        RuntimeException expected = null;
+        try {
+            TodUtils.parseUrlParams(foreignUrl);
+        }
+        catch (RuntimeException ex) {
+            expected = ex;
+        }
+        if (expected == null) {
+            assertEquals(3L, m.attrDefUrlToConceptId(foreignUrl));
+        } else {
+            try {
+                m.attrDefUrlToConceptId(foreignUrl);
+                Assert.fail("Should have failed on url " + foreignUrl);
+            }
+            catch (RuntimeException ex) {
+                assertEquals(expected.getClass(), ex.getClass());
+            }
+        }
+    }
+
+    @Test
+    public void testIsUrlOf() {
+        assertTrue(m.isUrlOf(UrlKind.CONCEPT, m.conceptIdToUrl(12L), 12L));
+        assertTrue(m.isUrlOf(UrlKind.ENTITY, m.entityIdToUrl(-1L), -1L));
+        assertFalse(m.isUrlOf(UrlKind.CONCEPT, m.conceptIdToUrl(12L), 2L));
+        assertFalse(m.isUrlOf(UrlKind.ENTITY, m.conceptIdToUrl(12L), 12L));
+        assertFalse(m.isUrlOf(UrlKind.CONCEPT, "http://other.org/concepts/12", 12L));
+    }
+
     @Test
     public void testConcept() {
         assertEquals(1L, m.conceptUrlToId(m.conceptIdToUrl(1L)));        
@@ -130,4 +214,151 @@ public class UrlMapperTest {
 
     }
 
+    @Test
+    public void testUrlToIdVariants() {
+        assertEquals(5L, m.conceptUrlToId(BASE + "/concepts/5?a=b"));
+        assertEquals(5L, m.conceptUrlToId(BASE + "/concepts/5#x"));
+        assertEquals(5L, m.conceptUrlToId(BASE + "/concepts/005"));
+        assertEquals(-1L, m.conceptUrlToId(BASE + "/concepts/-7"));
+        assertEquals(5L, m.entityNewUrlToId(BASE + "/instances/new/5"));
+
+        // these go through java.net.URL normalization
+        assertEquals(5L, m.conceptUrlToId(" " + BASE + "/concepts/5 "));
+        assertEquals(5L, m.conceptUrlToId("HTTP://entitybase.org/concepts/5"));
+        assertEquals(5L, m.conceptUrlToId("url:" + BASE + "/concepts/5"));
+        assertEquals(5L, m.conceptUrlToId(BASE + "/concepts/./5"));
+    }
+
+    @Test
+    public void testTryUrlToId() {
+        assertEquals(1L, m.tryConceptUrlToId(m.conceptIdToUrl(1L)));
+        assertEquals(1L, m.tryEntityUrlToId(m.entityIdToUrl(1L)));
+        assertEquals(1L, m.tryEntityNewUrlToId(m.entityNewIdToUrl(1L)));
+        assertEquals(1L, m.tryEtypeUrlToId(m.etypeIdToUrl(1L)));
+        assertEquals(1L, m.tryAttrDefUrlToId(m.attrDefIdToUrl(1L, 2L)));
+        assertEquals(-1L, m.tryConceptUrlToId(m.conceptIdToUrl(-1L)));
+        assertEquals(5L, m.tryConceptUrlToId(" " + BASE + "/concepts/5 "));
+
+        assertEquals(UrlMapper.INVALID_ID, m.tryConceptUrlToId(null));
+        assertEquals(UrlMapper.INVALID_ID, m.tryConceptUrlToId(""));
+        assertEquals(UrlMapper.INVALID_ID, m.tryConceptUrlToId("bla"));
+        assertEquals(UrlMapper.INVALID_ID, m.tryConceptUrlToId(m.entityIdToUrl(1L)));
+        assertEquals(UrlMapper.INVALID_ID, m.tryConceptUrlToId("http://other.org/concepts/1"));
+        assertEquals(UrlMapper.INVALID_ID, m.tryConceptUrlToId(BASE + "/concepts/1a"));
+        assertEquals(UrlMapper.INVALID_ID, m.tryEntityUrlToId(m.entityNewIdToUrl(1L)));
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(ParsedUrl.of(UrlKind.CONCEPT, 1L), m.classify(m.conceptIdToUrl(1L)));
+        assertEquals(ParsedUrl.of(UrlKind.ENTITY, 2L), m.classify(m.entityIdToUrl(2L)));
+        assertEquals(ParsedUrl.of(UrlKind.ENTITY_NEW, 3L), m.classify(m.entityNewIdToUrl(3L)));
+        assertEquals(ParsedUrl.of(UrlKind.ETYPE, 4L), m.classify(m.etypeIdToUrl(4L)));
+        assertEquals(ParsedUrl.of(UrlKind.ATTR_DEF, 5L, 6L), m.classify(m.attrDefIdToUrl(5L, 6L)));
+        assertEquals(ParsedUrl.of(UrlKind.ATTR_DEF, 5L, UrlMapper.INVALID_ID), m.classify(BASE + "/attributedefinitions/5"));
+        assertEquals(ParsedUrl.of(UrlKind.CONCEPT, 7L), m.classify(new StringBuilder(BASE).append("/concepts/7?a=b")));
+        assertEquals(ParsedUrl.of(UrlKind.CONCEPT, 8L), m.classify("HTTP://entitybase.org/concepts/8"));
+
+        assertEquals(ParsedUrl.unknown(), m.classify(""));
+        assertEquals(ParsedUrl.unknown(), m.classify(BASE + "/concepts/x"));
+        assertEquals(ParsedUrl.unknown(), m.classify(BASE + "/instances/new/x"));
+        assertEquals(ParsedUrl.unknown(), m.classify("http://other.org/types/1"));
+        assertEquals(UrlKind.UNKNOWN, m.classify(BASE + "/bla/types/1").getKind());
+    }
+
+    @Test
+    public void testIdCache() {
+        UrlMapper cm = UrlMapper.of(BASE, 2);
+        assertSame(cm.conceptIdToUrl(1L), cm.conceptIdToUrl(1L));
+        assertSame(cm.entityIdToUrl(1L), cm.entityIdToUrl(1L));
+        assertEquals(m.conceptIdToUrl(1L), cm.conceptIdToUrl(1L));
+        assertEquals(m.entityIdToUrl(1L), cm.entityIdToUrl(1L));
+        assertEquals(m.entityNewIdToUrl(1L), cm.entityNewIdToUrl(1L));
+        assertEquals(m.etypeIdToUrl(1L), cm.etypeIdToUrl(1L));
+        assertEquals(m.conceptIdToUrl(-1L), cm.conceptIdToUrl(-1L));
+
+        // evictions still give correct urls
+        for (long i = 0; i < 10; i++) {
+            assertEquals(m.conceptIdToUrl(i), cm.conceptIdToUrl(i));
+        }
+    }
+
+    @Test
+    public void testBulk() {
+        long[] ids = {1L, -1L, 3L};
+        String[] urls = m.idsToUrls(UrlKind.ENTITY, ids);
+        assertEquals(3, urls.length);
+        assertEquals(m.entityIdToUrl(1L), urls[0]);
+        assertEquals(m.entityIdToUrl(-1L), urls[1]);
+        assertEquals(m.entityIdToUrl(3L), urls[2]);
+
+        BitSet failures = new BitSet();
+        failures.set(1);
+        long[] parsed = m.urlsToIds(UrlKind.ENTITY, new CharSequence[]{urls[0], "bla", urls[2]}, failures);
+        assertEquals(1L, parsed[0]);
+        assertEquals(UrlMapper.INVALID_ID, parsed[1]);
+        assertEquals(3L, parsed[2]);
+        assertEquals(1, failures.cardinality());
+        assertTrue(failures.get(1));
+
+        parsed = m.urlsToIds(UrlKind.ENTITY, Arrays.asList(urls), failures);
+        assertArrayEquals(ids, parsed);
+        assertTrue(failures.isEmpty());
+
+        try {
+            m.idsToUrls(UrlKind.CONCEPT, new long[]{1L, -2L});
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+
+        try {
+            m.idsToUrls(UrlKind.ATTR_DEF, new long[]{1L});
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+    }
+
+    @Test
+    public void testInvalidUrlToId() {
+        String[] invalidUrls = {
+            BASE + "/concepts/",
+            BASE + "/concepts/5a",
+            BASE + "/concepts/-",
+            BASE + "/concepts/99999999999999999999",
+            BASE + "/instances/5",
+            "http://other.org/concepts/5",
+            "concepts/5",
+            ""};
+
+        for (String url : invalidUrls) {
+            try {
+                m.conceptUrlToId(url);
+                Assert.fail("Should have failed on url " + url);
+            }
+            catch (IllegalArgumentException ex) {
+
+            }
+        }
+
+        try {
+            m.entityUrlToId(BASE + "/instances/new/5");
+            Assert.fail();
+        }
+        catch (IllegalArgumentException ex) {
+
+        }
+    }
+
+    @Test
+    public void testSharedInstances() {
+        assertSame(UrlMapper.of(BASE), UrlMapper.of(BASE + "/"));
+        assertSame(UrlMapper.of(), UrlMapper.of("http://localhost"));
+        assertSame(UrlMapper.of(BASE, 16), UrlMapper.of(BASE + "/", 16));
+        assertTrue(UrlMapper.of(BASE) != UrlMapper.of(BASE, 16));
+    }
+
 }